@@ -21,7 +21,6 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
-import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.Map;
@@ -32,6 +31,7 @@ import cn.hugo.android.scanner.camera.CameraManager;
 import cn.hugo.android.scanner.config.IntentSource;
 import cn.hugo.android.scanner.decode.CaptureActivityHandler;
 import cn.hugo.android.scanner.decode.DecodeInterface;
+import cn.hugo.android.scanner.decode.DecodeWorkerPool;
 import cn.hugo.android.scanner.utils.FinishListener;
 import cn.hugo.android.scanner.utils.InactivityTimer;
 import cn.hugo.android.scanner.view.ViewfinderView;
@@ -79,6 +79,11 @@ public class MainFragment extends Fragment implements DecodeInterface, TextureVi
 
     private Result lastResult;
 
+    /**
+     * 每幀最多識別的條碼數，大於1時為多條碼模式
+     */
+    private int maxResultsPerFrame = 1;
+
     private boolean isFlashlightOpen;
 
     /**
@@ -181,6 +186,10 @@ public class MainFragment extends Fragment implements DecodeInterface, TextureVi
         source = IntentSource.NONE;
         decodeFormats = null;
         characterSet = null;
+        // 從後台回來時預覽介面還在，不會再收到onSurfaceTextureAvailable
+        if (hasSurface) {
+            initCamera(mSurfaceView.getSurfaceTexture());
+        }
     }
 
     @Override
@@ -190,6 +199,8 @@ public class MainFragment extends Fragment implements DecodeInterface, TextureVi
             handler = null;
         }
         inactivityTimer.onPause();
+        // 也會放棄還未完成的異步打開
+        cameraManager.closeDriver();
 //    ambientLightManager.stop();
 //    beepManager.close();
 //
@@ -276,8 +287,10 @@ public class MainFragment extends Fragment implements DecodeInterface, TextureVi
 
         lastResult = rawResult;
 
-        // 把圖片畫到掃描框
-        mViewfinderView.drawResultBitmap(barcode);
+        // 把圖片畫到掃描框；連續掃描時保持即時預覽
+        if (handler == null || !handler.isBulkMode()) {
+            mViewfinderView.drawResultBitmap(barcode);
+        }
 
         beepManager.playBeepSoundAndVibrate();
 
@@ -285,6 +298,34 @@ public class MainFragment extends Fragment implements DecodeInterface, TextureVi
 
     }
 
+    @Override
+    public void handleDecodeMultiple(Result[] rawResults, Bitmap barcode, float scaleFactor) {
+        inactivityTimer.onActivity();
+        lastResult = rawResults[0];
+        if (handler == null || !handler.isBulkMode()) {
+            mViewfinderView.drawResultBitmap(barcode);
+        }
+        beepManager.playBeepSoundAndVibrate();
+
+        StringBuilder text = new StringBuilder("識別結果(").append(rawResults.length).append("):");
+        for (Result result : rawResults) {
+            text.append('\n').append(ResultParser.parseResult(result).toString());
+        }
+        Toast.makeText(getContext(), text, Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public int getMaxResultsPerFrame() {
+        return maxResultsPerFrame;
+    }
+
+    /**
+     * 設置每幀最多識別的條碼數，大於1時一次識別掃描框中的多個條碼。下次開始掃描時生效
+     */
+    public void setMaxResultsPerFrame(int maxResults) {
+        this.maxResultsPerFrame = Math.max(1, maxResults);
+    }
+
     public void restartPreviewAfterDelay(long delayMS) {
         if (handler != null) {
             handler.sendEmptyMessageDelayed(R.id.restart_preview, delayMS);
@@ -332,23 +373,30 @@ public class MainFragment extends Fragment implements DecodeInterface, TextureVi
                     "initCamera() while already open -- late SurfaceView callback?");
             return;
         }
-        try {
-            cameraManager.openDriver(surfaceTexture);
-            // Creating the handler starts the preview, which can also throw a
-            // RuntimeException.
-            if (handler == null) {
-                handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet, cameraManager);
+        // 相機在相機線程上打開並開始預覽，不阻塞UI線程；onPause時未完成的打開會被放棄
+        cameraManager.setPreviewBufferCount(CaptureActivityHandler.previewBufferCount(DecodeWorkerPool.defaultPoolSize()));
+        cameraManager.openDriverAsync(surfaceTexture, new CameraManager.OpenCallback() {
+            @Override
+            public void onCameraOpened() {
+                try {
+                    if (handler == null) {
+                        handler = new CaptureActivityHandler(MainFragment.this, decodeFormats, decodeHints, characterSet, cameraManager);
+                    }
+                    decodeOrStoreSavedBitmap(null, null);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Unexpected error starting decode", e);
+                    displayFrameworkBugMessageAndExit();
+                }
             }
-            decodeOrStoreSavedBitmap(null, null);
-        } catch (IOException ioe) {
-            Log.w(TAG, ioe);
-            displayFrameworkBugMessageAndExit();
-        } catch (RuntimeException e) {
-            // Barcode Scanner has seen crashes in the wild of this variety:
-            // java.?lang.?RuntimeException: Fail to connect to camera service
-            Log.w(TAG, "Unexpected error initializing camera", e);
-            displayFrameworkBugMessageAndExit();
-        }
+
+            @Override
+            public void onCameraOpenFailed(Exception e) {
+                // Barcode Scanner has seen crashes in the wild of this variety:
+                // java.?lang.?RuntimeException: Fail to connect to camera service
+                Log.w(TAG, "Unexpected error initializing camera", e);
+                displayFrameworkBugMessageAndExit();
+            }
+        });
     }
 
     /**
@@ -22,21 +22,43 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 
+import cn.hugo.android.scanner.common.ScannerScheduler;
+
 /**
  * Detects ambient light and switches on the front light when very dark, and off
- * again when sufficiently light.
+ * again when sufficiently light. The readings go through a
+ * {@link TorchController}; only a change of its decision is passed on, and
+ * {@link CameraManager#requestTorch(boolean)} applies it on the camera thread
+ * no more often than once per interval. The sensor reports only changes, so
+ * until the smoothed value has caught up with the last reading it is updated
+ * on the {@link ScannerScheduler} as well. <br/>
+ * <br/>
+ *
+ * 環境光讀數經平滑和遲滯判斷後，只有決定改變時才通知CameraManager，不再每個感測器事件都設置相機參數
  *
  * @author Sean Owen
  * @author Nikolaus Huber
  */
 public class AmbientLightManager implements SensorEventListener {
     private static final String TAG = AmbientLightManager.class.getSimpleName();
-    private static final float TOO_DARK_LUX = 45.0f;
-    private static final float BRIGHT_ENOUGH_LUX = 450.0f;
     private final Context mContext;
     private CameraManager mCameraManager;
+    private TorchController mTorchController;
+    private boolean mTorchOn;
+
+    /**
+     * 平均值收斂前的定時更新，讀數不再變化時也能越過臨界值
+     */
+    private ScannerScheduler.Task mTick;
+    private final Runnable mTickJob = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
 
     /**
      * 光感測器
@@ -47,39 +69,64 @@ public class AmbientLightManager implements SensorEventListener {
         this.mContext = context;
     }
 
-    public void start(CameraManager cameraManager) {
+    public synchronized void start(CameraManager cameraManager) {
         this.mCameraManager = cameraManager;
         SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         if (FrontLightMode.readPref(sharedPrefs) == FrontLightMode.AUTO) {
             SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
             mLightSensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
             if (mLightSensor != null) {
+                // 從目前的燈狀態開始判斷，避免第一個讀數就反覆開關
+                mTorchOn = cameraManager.getTorchState();
+                mTorchController = new TorchController(mTorchOn);
                 sensorManager.registerListener(this, mLightSensor, SensorManager.SENSOR_DELAY_NORMAL);
             }
         }
     }
 
-    public void stop() {
+    public synchronized void stop() {
+        if (mTick != null) {
+            mTick.cancel();
+            mTick = null;
+        }
         if (mLightSensor != null) {
             SensorManager sensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
             sensorManager.unregisterListener(this);
             mCameraManager = null;
             mLightSensor = null;
+            mTorchController = null;
         }
     }
 
     /**
-     * 該方法會在周圍環境改變後回調，然後根據設置好的臨界值決定是否打開閃光燈
+     * 該方法會在周圍環境改變後回調，平滑後根據臨界值決定是否打開閃光燈
      */
     @Override
-    public void onSensorChanged(SensorEvent sensorEvent) {
-        float ambientLightLux = sensorEvent.values[0];
-        if (mCameraManager != null) {
-            if (ambientLightLux <= TOO_DARK_LUX) {
-                mCameraManager.setTorch(true);
-            } else if (ambientLightLux >= BRIGHT_ENOUGH_LUX) {
-                mCameraManager.setTorch(false);
-            }
+    public synchronized void onSensorChanged(SensorEvent sensorEvent) {
+        if (mCameraManager == null || mTorchController == null) {
+            return;
+        }
+        update(mTorchController.onLux(sensorEvent.values[0], SystemClock.uptimeMillis()));
+    }
+
+    private synchronized void onTick() {
+        mTick = null;
+        if (mCameraManager == null || mTorchController == null) {
+            return;
+        }
+        update(mTorchController.onTick(SystemClock.uptimeMillis()));
+    }
+
+    /**
+     * 決定改變時通知相機，平均值未收斂則安排下一次更新。調用時須持有鎖
+     */
+    private void update(boolean torchOn) {
+        if (torchOn != mTorchOn) {
+            mTorchOn = torchOn;
+            mCameraManager.requestTorch(torchOn);
+        }
+        if (mTick == null && !mTorchController.isSettled()) {
+            mTick = ScannerScheduler.getInstance().schedule(mTickJob, TorchController.TICK_MS);
         }
     }
 
@@ -16,66 +16,133 @@
 
 package cn.hugo.android.scanner.camera;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.Build;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import cn.hugo.android.scanner.common.Runnable;
+import cn.hugo.android.scanner.common.ScannerScheduler;
 import cn.hugo.android.scanner.config.Config;
 
 /**
  * 由於對焦不是一次性完成的任務（手抖），而系統提供的對焦僅有Camera.autoFocus()方法，
- * 因此需要一個線程來不斷調用Camera.autoFocus()直到用戶滿意按下快門為止
+ * 因此需要不斷調用Camera.autoFocus()直到用戶滿意按下快門為止。<br/>
+ * <br/>
+ *
+ * Focus runs are scheduled on the {@link ScannerScheduler} instead of a
+ * sleeping AsyncTask. Besides the periodic run, the decoder drives focus:
+ * {@link #requestFocus()} focuses at once when frames come out blurred or
+ * candidate points keep appearing without a result, and
+ * {@link #onDecodeSucceeded()} postpones the periodic run, with a growing
+ * interval, while the current focus evidently works. In the continuous focus
+ * modes the camera focuses by itself and this class only counts the ends of
+ * its focus moves. Every focus run which ends is counted, so that the
+ * decoder can tell that the picture may have sharpened.
  */
 public class AutoFocusManager implements Camera.AutoFocusCallback {
     private static final String TAG = AutoFocusManager.class.getSimpleName();
     private static final long AUTO_FOCUS_INTERVAL_MS = 2000L;
+
+    /**
+     * 解碼持續成功時，週期對焦的間隔每次加倍，最多拉長到這個值
+     */
+    private static final long MAX_AUTO_FOCUS_INTERVAL_MS = 8000L;
+
+    /**
+     * 解碼端要求重新對焦時，距離上次開始對焦至少要間隔的時間
+     */
+    private static final long MIN_REQUESTED_FOCUS_INTERVAL_MS = 1000L;
     private static final Collection<String> FOCUS_MODES_CALLING_AF;
+    private static final Collection<String> FOCUS_MODES_CONTINUOUS;
 
     static {
         FOCUS_MODES_CALLING_AF = new ArrayList<String>(2);
         FOCUS_MODES_CALLING_AF.add(Camera.Parameters.FOCUS_MODE_AUTO);
         FOCUS_MODES_CALLING_AF.add(Camera.Parameters.FOCUS_MODE_MACRO);
+        FOCUS_MODES_CONTINUOUS = new ArrayList<String>(2);
+        FOCUS_MODES_CONTINUOUS.add(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+        FOCUS_MODES_CONTINUOUS.add(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
     }
 
     private boolean active;
+    private boolean mFocusing;
+    private long mLastFocusStart;
+    private long mLastDecodeSuccess;
+    private long mInterval = AUTO_FOCUS_INTERVAL_MS;
     private final boolean mUseAutoFocus;
+    private final boolean mContinuous;
     private final Camera mCamera;
-    private AsyncTask<?, ?, ?> mOutstandingTask;
 
-    public AutoFocusManager(Context context, Camera camera) {
+    /**
+     * 對焦結束的次數，與相機後端共用
+     */
+    private final AtomicInteger mFocusCount;
+    private ScannerScheduler.Task mPendingFocus;
+
+    private final Runnable mFocusTask = new Runnable() {
+        @Override
+        public void run() {
+            onFocusDue();
+        }
+    };
+
+    /**
+     * @param focusCount Incremented whenever a focus run ends.
+     */
+    public AutoFocusManager(Context context, Camera camera, AtomicInteger focusCount) {
         this.mCamera = camera;
+        this.mFocusCount = focusCount;
         SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
         String currentFocusMode = camera.getParameters().getFocusMode();
         mUseAutoFocus = sharedPrefs.getBoolean(Config.KEY_AUTO_FOCUS, true) && FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
-        Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + mUseAutoFocus);
+        mContinuous = FOCUS_MODES_CONTINUOUS.contains(currentFocusMode);
+        Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + mUseAutoFocus
+                + "; continuous? " + mContinuous);
+        if (mContinuous && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            watchContinuousFocus();
+        }
         start();
     }
 
+    /**
+     * 連續對焦模式下，相機每次停止移動鏡頭就算一次對焦結束
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void watchContinuousFocus() {
+        try {
+            mCamera.setAutoFocusMoveCallback(new Camera.AutoFocusMoveCallback() {
+                @Override
+                public void onAutoFocusMoving(boolean start, Camera camera) {
+                    if (!start) {
+                        mFocusCount.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RuntimeException re) {
+            Log.w(TAG, "Cannot watch continuous focus", re);
+        }
+    }
+
     @Override
     public synchronized void onAutoFocus(boolean success, Camera theCamera) {
+        mFocusing = false;
+        mFocusCount.incrementAndGet();
         if (active) {
-            mOutstandingTask = new AutoFocusTask();
-            Runnable.execAsync(mOutstandingTask);
+            schedule(mInterval);
         }
     }
 
     public synchronized void start() {
         if (mUseAutoFocus) {
             active = true;
-            try {
-                mCamera.autoFocus(this);
-            } catch (RuntimeException re) {
-                // Have heard RuntimeException reported in Android 4.0.x+;
-                // continue?
-                Log.w(TAG, "Unexpected exception while focusing", re);
-            }
+            focus();
         }
     }
 
@@ -89,28 +156,73 @@ public class AutoFocusManager implements Camera.AutoFocusCallback {
                 Log.w(TAG, "Unexpected exception while cancelling focusing", re);
             }
         }
-        if (mOutstandingTask != null) {
-            mOutstandingTask.cancel(true);
-            mOutstandingTask = null;
-        }
+        cancelPending();
+        mFocusing = false;
         active = false;
     }
 
-    private final class AutoFocusTask extends AsyncTask<Object, Object, Object> {
-        @Override
-        protected Object doInBackground(Object... voids) {
-            try {
-                Thread.sleep(AUTO_FOCUS_INTERVAL_MS);
-            } catch (InterruptedException e) {
-                // continue
+    /**
+     * Focuses now instead of at the end of the current interval, unless a
+     * focus run is in progress or started less than
+     * {@link #MIN_REQUESTED_FOCUS_INTERVAL_MS} ago. The run itself happens
+     * on the scheduler thread, so this may be called from a decode thread.
+     */
+    public synchronized void requestFocus() {
+        if (!active || mFocusing || System.currentTimeMillis() - mLastFocusStart < MIN_REQUESTED_FOCUS_INTERVAL_MS) {
+            return;
+        }
+        mInterval = AUTO_FOCUS_INTERVAL_MS;
+        schedule(0L);
+    }
+
+    /**
+     * Tells that a frame was decoded; the next periodic focus run is skipped
+     * if it comes while decodes keep succeeding.
+     */
+    public synchronized void onDecodeSucceeded() {
+        mLastDecodeSuccess = System.currentTimeMillis();
+    }
+
+    private void onFocusDue() {
+        synchronized (this) {
+            if (!active || mFocusing) {
+                return;
             }
-            synchronized (AutoFocusManager.this) {
-                if (active) {
-                    start();
-                }
+            if (System.currentTimeMillis() - mLastDecodeSuccess < mInterval) {
+                // 仍在解碼成功，焦點沒有問題：延後下次對焦並拉長間隔
+                mInterval = Math.min(mInterval * 2, MAX_AUTO_FOCUS_INTERVAL_MS);
+                schedule(mInterval);
+                return;
             }
-            return null;
+            mInterval = AUTO_FOCUS_INTERVAL_MS;
+            focus();
         }
     }
-}
 
+    private void focus() {
+        cancelPending();
+        try {
+            mFocusing = true;
+            mLastFocusStart = System.currentTimeMillis();
+            mCamera.autoFocus(this);
+        } catch (RuntimeException re) {
+            // Have heard RuntimeException reported in Android 4.0.x+;
+            // continue?
+            mFocusing = false;
+            Log.w(TAG, "Unexpected exception while focusing", re);
+            schedule(mInterval);
+        }
+    }
+
+    private void schedule(long delayMs) {
+        cancelPending();
+        mPendingFocus = ScannerScheduler.getInstance().schedule(mFocusTask, delayMs);
+    }
+
+    private void cancelPending() {
+        if (mPendingFocus != null) {
+            mPendingFocus.cancel();
+            mPendingFocus = null;
+        }
+    }
+}
@@ -0,0 +1,763 @@
+package cn.hugo.android.scanner.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.hugo.android.scanner.config.Config;
+
+/**
+ * {@link CameraBackend} on the camera2 API. The preview goes to the display
+ * surface and to an {@link ImageReader} in YUV_420_888; every image is
+ * handed on as a {@link PreviewFrame} over its Y plane, so the decoder reads
+ * the camera's buffer in place. The reader holds at most as many images as
+ * the preview buffer count: while the decoders hold them all, new frames are
+ * dropped by the camera instead of queuing up. <br/>
+ * <br/>
+ *
+ * 基於camera2的相機後端：ImageReader以YUV_420_888持續送幀，解碼線程直接讀取Y平面，
+ * maxImages限制同時在外的幀數
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class Camera2Backend implements CameraBackend {
+    private static final String TAG = Camera2Backend.class.getSimpleName();
+
+    private static final long OPEN_TIMEOUT_MS = 2500L;
+
+    /**
+     * 數碼變焦每一級的倍率間隔，乘以100
+     */
+    private static final int ZOOM_STEP = 10;
+
+    /**
+     * 兩次AF觸發之間的最短間隔
+     */
+    private static final long MIN_FOCUS_REQUEST_INTERVAL_MS = 1000L;
+
+    private final Context mContext;
+    private final PreviewCallback mPreviewCallback;
+    private final android.hardware.camera2.CameraManager mSystemCameraManager;
+
+    /**
+     * 相機回調和ImageReader回調都在這個線程上執行
+     */
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private volatile CameraDevice mDevice;
+    private CameraCharacteristics mCharacteristics;
+    private CameraProfile mProfile;
+    private Surface mPreviewSurface;
+    private SurfaceTexture mPreviewTexture;
+
+    /**
+     * 由mPreviewTexture建立的Surface，每個SurfaceTexture只建立一次，換紋理或關閉相機時釋放
+     */
+    private Surface mTextureSurface;
+    private Point mPreviewSize;
+    private boolean mInvert;
+    private boolean mAutoFocus;
+    private boolean mContinuousFocus;
+
+    /**
+     * 預覽幀轉到螢幕方向需要順時針旋轉的角度，由感光元件方向和螢幕旋轉算出
+     */
+    private volatile int mPreviewRotation;
+
+    /**
+     * 以下狀態在相機線程和調用線程之間共享，用this同步
+     */
+    private CameraCaptureSession mSession;
+    private FrameStream mStream;
+    private Surface mSessionPreviewSurface;
+    private boolean mPreviewing;
+    private boolean mTorch;
+    private int mZoom;
+    private int mAutoFocusMode;
+    private long mLastFocusRequest;
+
+    /**
+     * 對焦結束的次數；mAfState只在相機線程上讀寫
+     */
+    private final AtomicInteger mFocusCount = new AtomicInteger();
+    private int mAfState = CaptureResult.CONTROL_AF_STATE_INACTIVE;
+
+    /**
+     * Watches the AF state of the preview results and counts every scan,
+     * triggered or continuous, which comes to an end.
+     */
+    private final CameraCaptureSession.CaptureCallback mFocusWatcher = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            Integer state = result.get(CaptureResult.CONTROL_AF_STATE);
+            if (state == null || state == mAfState) {
+                return;
+            }
+            if (mAfState == CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN || mAfState == CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN) {
+                mFocusCount.incrementAndGet();
+            }
+            mAfState = state;
+        }
+    };
+
+    Camera2Backend(Context context, PreviewCallback previewCallback) {
+        this.mContext = context;
+        this.mPreviewCallback = previewCallback;
+        this.mSystemCameraManager = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    @Override
+    public CameraProfile open() throws IOException {
+        if (mDevice != null) {
+            return mProfile;
+        }
+        if (mThread != null) {
+            // 上一個設備已被系統斷開，重新打開前先收掉它的線程
+            mThread.quitSafely();
+        }
+        mThread = new HandlerThread("Camera2Thread");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        final CountDownLatch opened = new CountDownLatch(1);
+        final OpenAttempt attempt = new OpenAttempt();
+        try {
+            String cameraId = findCameraId();
+            if (cameraId == null) {
+                throw new IOException("No camera");
+            }
+            mCharacteristics = mSystemCameraManager.getCameraCharacteristics(cameraId);
+            mSystemCameraManager.openCamera(cameraId, new CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(CameraDevice camera) {
+                    if (attempt.settle(camera)) {
+                        opened.countDown();
+                    }
+                }
+
+                @Override
+                public void onDisconnected(CameraDevice camera) {
+                    camera.close();
+                    forget(camera);
+                    if (attempt.settle(null)) {
+                        opened.countDown();
+                    }
+                }
+
+                @Override
+                public void onError(CameraDevice camera, int error) {
+                    Log.w(TAG, "Camera error " + error);
+                    camera.close();
+                    forget(camera);
+                    if (attempt.settle(null)) {
+                        opened.countDown();
+                    }
+                }
+            }, mHandler);
+            CameraDevice camera = opened.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS) ? attempt.getDevice() : null;
+            if (camera == null) {
+                abandon(attempt);
+                throw new IOException("Cannot open camera " + cameraId);
+            }
+            mDevice = camera;
+            mProfile = profileOf(cameraId, mCharacteristics);
+            return mProfile;
+        } catch (CameraAccessException cae) {
+            close();
+            throw new IOException("Cannot open camera: " + cae);
+        } catch (SecurityException se) {
+            close();
+            throw new IOException("No camera permission: " + se);
+        } catch (InterruptedException ie) {
+            abandon(attempt);
+            close();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while opening camera");
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Gives up an open which has not come through. If the device still
+     * opens later, its callback closes it and then ends the camera thread,
+     * so the thread is left running for it instead of being quit by
+     * {@link #close()}.
+     */
+    private void abandon(OpenAttempt attempt) {
+        if (attempt.abandon()) {
+            Log.w(TAG, "Camera open timed out, closing the device once it opens");
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    /**
+     * Drops a device which was closed by the system, so that the next
+     * {@link #startPreview(int)} does nothing instead of using it.
+     */
+    private synchronized void forget(CameraDevice camera) {
+        if (mDevice == camera) {
+            mDevice = null;
+            mSession = null;
+        }
+    }
+
+    /**
+     * 背面攝像頭的id，沒有則取第一個
+     */
+    private String findCameraId() throws CameraAccessException {
+        String[] ids = mSystemCameraManager.getCameraIdList();
+        for (String id : ids) {
+            Integer facing = mSystemCameraManager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+                return id;
+            }
+        }
+        return ids.length > 0 ? ids[0] : null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mDevice != null;
+    }
+
+    @Override
+    public void setPreviewDisplay(SurfaceHolder holder) {
+        releaseTextureSurface();
+        mPreviewTexture = null;
+        mPreviewSurface = holder.getSurface();
+    }
+
+    @Override
+    public void setPreviewTexture(SurfaceTexture surfaceTexture) {
+        if (surfaceTexture != mPreviewTexture) {
+            releaseTextureSurface();
+        }
+        mPreviewTexture = surfaceTexture;
+        mPreviewSurface = null;
+    }
+
+    private void releaseTextureSurface() {
+        if (mTextureSurface != null) {
+            mTextureSurface.release();
+            mTextureSurface = null;
+        }
+    }
+
+    @Override
+    public void configure(CameraConfigurationManager configurationManager) {
+        mPreviewSize = configurationManager.getCameraResolution();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        synchronized (this) {
+            mTorch = FrontLightMode.readPref(prefs) == FrontLightMode.ON && mProfile.hasTorch();
+        }
+        mInvert = prefs.getBoolean(Config.KEY_INVERT_SCAN, false) && mProfile.getColorEffects() != null;
+        mAutoFocus = prefs.getBoolean(Config.KEY_AUTO_FOCUS, true);
+        mContinuousFocus = !prefs.getBoolean(Config.KEY_DISABLE_CONTINUOUS_FOCUS, false);
+        mPreviewRotation = previewRotation();
+    }
+
+    /**
+     * SENSOR_ORIENTATION adjusted for the current display rotation, as
+     * camera2 leaves the frames in sensor orientation: 90 on most phones,
+     * 270 on some (e.g. Nexus 5X).
+     */
+    private int previewRotation() {
+        Integer sensorOrientation = mCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        Integer facing = mCharacteristics.get(CameraCharacteristics.LENS_FACING);
+        WindowManager windowManager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        int displayRotation;
+        switch (windowManager.getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_90:
+                displayRotation = 90;
+                break;
+            case Surface.ROTATION_180:
+                displayRotation = 180;
+                break;
+            case Surface.ROTATION_270:
+                displayRotation = 270;
+                break;
+            default:
+                displayRotation = 0;
+                break;
+        }
+        int sensor = sensorOrientation == null ? 90 : sensorOrientation;
+        if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT) {
+            return (sensor + displayRotation) % 360;
+        }
+        return (sensor - displayRotation + 360) % 360;
+    }
+
+    @Override
+    public int getPreviewRotation() {
+        return mPreviewRotation;
+    }
+
+    @Override
+    public void startPreview(int bufferCount) {
+        CameraDevice device = mDevice;
+        if (device == null || mPreviewSize == null) {
+            return;
+        }
+        Surface previewSurface = mPreviewSurface;
+        if (mPreviewTexture != null) {
+            mPreviewTexture.setDefaultBufferSize(mPreviewSize.x, mPreviewSize.y);
+            if (mTextureSurface == null) {
+                mTextureSurface = new Surface(mPreviewTexture);
+            }
+            previewSurface = mTextureSurface;
+        }
+        // acquireLatestImage至少需要兩張
+        final FrameStream stream = new FrameStream(ImageReader.newInstance(mPreviewSize.x, mPreviewSize.y, ImageFormat.YUV_420_888, Math.max(2, bufferCount)));
+        stream.mReader.setOnImageAvailableListener(stream, mHandler);
+        List<Surface> targets = new ArrayList<Surface>(2);
+        if (previewSurface != null) {
+            targets.add(previewSurface);
+        }
+        targets.add(stream.mReader.getSurface());
+        synchronized (this) {
+            if (mPreviewing) {
+                stream.close();
+                return;
+            }
+            mStream = stream;
+            mSessionPreviewSurface = previewSurface;
+            mPreviewing = true;
+        }
+        try {
+            device.createCaptureSession(targets, new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(CameraCaptureSession session) {
+                    synchronized (Camera2Backend.this) {
+                        if (!mPreviewing || mStream != stream) {
+                            // 配置完成前預覽已經停止
+                            session.close();
+                            return;
+                        }
+                        mSession = session;
+                        updateRepeatingRequest();
+                    }
+                }
+
+                @Override
+                public void onConfigureFailed(CameraCaptureSession session) {
+                    Log.w(TAG, "Cannot configure capture session");
+                }
+            }, mHandler);
+        } catch (CameraAccessException cae) {
+            Log.w(TAG, "Cannot start preview", cae);
+        } catch (IllegalStateException ise) {
+            // 相機已被系統關閉
+            Log.w(TAG, "Camera closed while starting preview");
+        }
+    }
+
+    /**
+     * Sends the repeating preview request with the current torch and zoom.
+     * Call it holding the lock.
+     */
+    private void updateRepeatingRequest() {
+        if (mSession == null || mDevice == null) {
+            return;
+        }
+        try {
+            mSession.setRepeatingRequest(previewRequest().build(), mFocusWatcher, mHandler);
+        } catch (CameraAccessException cae) {
+            Log.w(TAG, "Cannot update preview request", cae);
+        } catch (IllegalStateException ise) {
+            // 會話已關閉
+            Log.w(TAG, "Session closed while updating preview request");
+        }
+    }
+
+    /**
+     * The preview request with the current focus mode, torch and zoom.
+     */
+    private CaptureRequest.Builder previewRequest() throws CameraAccessException {
+        CaptureRequest.Builder builder = mDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        if (mSessionPreviewSurface != null) {
+            builder.addTarget(mSessionPreviewSurface);
+        }
+        builder.addTarget(mStream.mReader.getSurface());
+        List<String> focusModes = mProfile.getFocusModes();
+        if (!mAutoFocus || focusModes == null) {
+            mAutoFocusMode = CaptureRequest.CONTROL_AF_MODE_OFF;
+        } else if (mContinuousFocus && focusModes.contains(android.hardware.Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+            mAutoFocusMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+        } else if (mContinuousFocus && focusModes.contains(android.hardware.Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+            mAutoFocusMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO;
+        } else if (focusModes.contains(android.hardware.Camera.Parameters.FOCUS_MODE_AUTO)) {
+            mAutoFocusMode = CaptureRequest.CONTROL_AF_MODE_AUTO;
+        } else {
+            mAutoFocusMode = CaptureRequest.CONTROL_AF_MODE_OFF;
+        }
+        if (mAutoFocusMode != CaptureRequest.CONTROL_AF_MODE_OFF) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, mAutoFocusMode);
+        }
+        builder.set(CaptureRequest.FLASH_MODE, mTorch ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF);
+        if (mInvert) {
+            builder.set(CaptureRequest.CONTROL_EFFECT_MODE, CaptureRequest.CONTROL_EFFECT_MODE_NEGATIVE);
+        }
+        if (mZoom > 0) {
+            builder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion(mProfile.getZoomRatios()[mZoom]));
+        }
+        return builder;
+    }
+
+    /**
+     * Sends a single AF trigger in auto focus mode. Continuous focus needs
+     * no help, the camera refocuses by itself.
+     */
+    @Override
+    public synchronized void requestFocus() {
+        if (mSession == null || mAutoFocusMode != CaptureRequest.CONTROL_AF_MODE_AUTO) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastFocusRequest < MIN_FOCUS_REQUEST_INTERVAL_MS) {
+            return;
+        }
+        mLastFocusRequest = now;
+        try {
+            CaptureRequest.Builder builder = previewRequest();
+            builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+            mSession.capture(builder.build(), null, mHandler);
+        } catch (CameraAccessException cae) {
+            Log.w(TAG, "Cannot trigger focus", cae);
+        } catch (IllegalStateException ise) {
+            // 會話已關閉
+            Log.w(TAG, "Session closed while triggering focus");
+        }
+    }
+
+    /**
+     * 以感光區域中心裁剪實現數碼變焦
+     *
+     * @param ratio 倍率，乘以100
+     */
+    private Rect cropRegion(int ratio) {
+        Rect active = mCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        int width = active.width() * 100 / ratio;
+        int height = active.height() * 100 / ratio;
+        int left = active.left + (active.width() - width) / 2;
+        int top = active.top + (active.height() - height) / 2;
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    @Override
+    public void stopPreview() {
+        FrameStream stream;
+        CameraCaptureSession session;
+        synchronized (this) {
+            mPreviewing = false;
+            session = mSession;
+            stream = mStream;
+            mSession = null;
+            mStream = null;
+        }
+        if (session != null) {
+            session.close();
+        }
+        if (stream != null) {
+            // 解碼線程手上的圖像全部歸還後才真正關閉
+            stream.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        stopPreview();
+        CameraDevice device;
+        synchronized (this) {
+            device = mDevice;
+            mDevice = null;
+        }
+        if (device != null) {
+            device.close();
+        }
+        releaseTextureSurface();
+        if (mThread != null) {
+            mThread.quitSafely();
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    /**
+     * AF triggers are only sent on request, so there is no periodic run to
+     * postpone.
+     */
+    @Override
+    public void onDecodeSucceeded() {
+    }
+
+    @Override
+    public int getFocusCount() {
+        return mFocusCount.get();
+    }
+
+    @Override
+    public synchronized boolean getTorchState() {
+        return mTorch;
+    }
+
+    @Override
+    public synchronized void setTorch(boolean newSetting) {
+        if (newSetting != mTorch && mProfile != null && mProfile.hasTorch()) {
+            mTorch = newSetting;
+            updateRepeatingRequest();
+        }
+    }
+
+    @Override
+    public synchronized void zoomIn() {
+        setZoom(mZoom + 1);
+    }
+
+    @Override
+    public synchronized void zoomOut() {
+        setZoom(mZoom - 1);
+    }
+
+    @Override
+    public synchronized void setZoom(int zoom) {
+        if (mProfile != null && mProfile.isZoomSupported() && zoom >= 0 && zoom <= mProfile.getMaxZoom() && zoom != mZoom) {
+            mZoom = zoom;
+            updateRepeatingRequest();
+        }
+    }
+
+    /**
+     * Describes a camera2 device like a Camera1 one, so that preview size,
+     * focus, torch and zoom are chosen the same way for both backends.
+     */
+    private static CameraProfile profileOf(String cameraId, CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] sizes = map == null ? null : map.getOutputSizes(ImageFormat.YUV_420_888);
+        int count = sizes == null ? 0 : sizes.length;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = sizes[i].getWidth();
+            heights[i] = sizes[i].getHeight();
+        }
+
+        List<String> focusModes = new ArrayList<String>();
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if (afModes != null) {
+            for (int mode : afModes) {
+                if (mode == CameraCharacteristics.CONTROL_AF_MODE_AUTO) {
+                    focusModes.add(android.hardware.Camera.Parameters.FOCUS_MODE_AUTO);
+                } else if (mode == CameraCharacteristics.CONTROL_AF_MODE_MACRO) {
+                    focusModes.add(android.hardware.Camera.Parameters.FOCUS_MODE_MACRO);
+                } else if (mode == CameraCharacteristics.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+                    focusModes.add(android.hardware.Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+                } else if (mode == CameraCharacteristics.CONTROL_AF_MODE_CONTINUOUS_VIDEO) {
+                    focusModes.add(android.hardware.Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+                } else if (mode == CameraCharacteristics.CONTROL_AF_MODE_EDOF) {
+                    focusModes.add(android.hardware.Camera.Parameters.FOCUS_MODE_EDOF);
+                }
+            }
+        }
+
+        Boolean flash = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        List<String> flashModes = flash != null && flash
+                ? Arrays.asList(android.hardware.Camera.Parameters.FLASH_MODE_OFF, android.hardware.Camera.Parameters.FLASH_MODE_TORCH) : null;
+
+        List<String> colorEffects = null;
+        int[] effects = characteristics.get(CameraCharacteristics.CONTROL_AVAILABLE_EFFECTS);
+        if (effects != null) {
+            for (int effect : effects) {
+                if (effect == CameraCharacteristics.CONTROL_EFFECT_MODE_NEGATIVE) {
+                    colorEffects = Arrays.asList(android.hardware.Camera.Parameters.EFFECT_NONE, android.hardware.Camera.Parameters.EFFECT_NEGATIVE);
+                }
+            }
+        }
+
+        // 數碼變焦：從1倍到最大倍率，每級增加0.1倍
+        Float maxDigitalZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        int maxRatio = maxDigitalZoom == null ? 100 : (int) (maxDigitalZoom * 100);
+        int[] zoomRatios = new int[(maxRatio - 100) / ZOOM_STEP + 1];
+        for (int i = 0; i < zoomRatios.length; i++) {
+            zoomRatios[i] = 100 + i * ZOOM_STEP;
+        }
+
+        int id;
+        try {
+            id = Integer.parseInt(cameraId);
+        } catch (NumberFormatException nfe) {
+            id = -1;
+        }
+        return new CameraProfile(id, Build.FINGERPRINT, widths, heights, count > 0 ? widths[0] : 0, count > 0 ? heights[0] : 0,
+                focusModes, flashModes, colorEffects, zoomRatios.length > 1, zoomRatios.length - 1, zoomRatios);
+    }
+
+    /**
+     * The outcome of one openCamera call, shared between {@link #open()}
+     * and the state callback on the camera thread.
+     */
+    private static final class OpenAttempt {
+        private CameraDevice mDevice;
+        private boolean mSettled;
+        private boolean mAbandoned;
+
+        /**
+         * Records the callback's outcome, or closes a device opened after
+         * open() gave up.
+         *
+         * @param device The opened device, or null if it failed.
+         * @return false if open() no longer waits.
+         */
+        synchronized boolean settle(CameraDevice device) {
+            if (mAbandoned) {
+                if (device != null) {
+                    device.close();
+                }
+                // 沒有人再用這個線程
+                Looper.myLooper().quitSafely();
+                return false;
+            }
+            if (!mSettled) {
+                mSettled = true;
+                mDevice = device;
+            }
+            return true;
+        }
+
+        synchronized CameraDevice getDevice() {
+            return mDevice;
+        }
+
+        /**
+         * @return true if the callback is still to come and will clean up
+         * by itself.
+         */
+        synchronized boolean abandon() {
+            mAbandoned = true;
+            if (mSettled && mDevice != null) {
+                // 等待被中斷，但設備已經打開
+                mDevice.close();
+                mDevice = null;
+            }
+            return !mSettled;
+        }
+    }
+
+    /**
+     * One ImageReader and the images taken from it which are still out. The
+     * reader is only closed once every image has been released, since
+     * closing it frees the planes the decoders may still be reading. Like
+     * {@link PreviewBufferRing} it makes one {@link PreviewFrame} per image
+     * the reader can hand out and points a free one at each new image.
+     */
+    private final class FrameStream implements ImageReader.OnImageAvailableListener, PreviewFrame.Owner {
+        final ImageReader mReader;
+        private int mOutstanding;
+        private boolean mClosing;
+
+        /**
+         * 未被持有的幀，前mFreeCount個可用
+         */
+        private final PreviewFrame[] mFreeFrames;
+        private int mFreeCount;
+
+        FrameStream(ImageReader reader) {
+            this.mReader = reader;
+            int count = reader.getMaxImages();
+            mFreeFrames = new PreviewFrame[count];
+            for (int i = 0; i < count; i++) {
+                mFreeFrames[i] = new PreviewFrame(reader.getWidth(), reader.getHeight(), this);
+            }
+            mFreeCount = count;
+        }
+
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            PreviewFrame frame;
+            synchronized (this) {
+                if (mClosing) {
+                    return;
+                }
+                Image image;
+                try {
+                    image = reader.acquireLatestImage();
+                } catch (IllegalStateException ise) {
+                    // 所有圖像都在解碼線程手上，這一幀由相機丟棄
+                    return;
+                }
+                if (image == null) {
+                    return;
+                }
+                if (mFreeCount == 0) {
+                    // 不會發生：圖像數不超過maxImages
+                    image.close();
+                    return;
+                }
+                mOutstanding++;
+                frame = mFreeFrames[--mFreeCount];
+                Image.Plane luminance = image.getPlanes()[0];
+                frame.setPlane(luminance.getBuffer(), luminance.getRowStride(), luminance.getPixelStride(), image);
+            }
+            mPreviewCallback.onFrame(frame);
+        }
+
+        @Override
+        public void release(PreviewFrame frame) {
+            synchronized (this) {
+                if (frame.getTag() == null) {
+                    // 已經歸還過
+                    return;
+                }
+                ((Image) frame.getTag()).close();
+                frame.setPlane(null, 0, 1, null);
+                mFreeFrames[mFreeCount++] = frame;
+                mOutstanding--;
+                if (mClosing && mOutstanding == 0) {
+                    mReader.close();
+                }
+            }
+        }
+
+        synchronized void close() {
+            if (!mClosing) {
+                mClosing = true;
+                if (mOutstanding == 0) {
+                    mReader.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package cn.hugo.android.scanner.camera;
+
+import android.graphics.SurfaceTexture;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * The device side of {@link CameraManager}: opening the camera, streaming
+ * preview frames to a {@link PreviewCallback}, torch and zoom. The framing
+ * rect and the choice of preview size stay in CameraManager and
+ * {@link CameraConfigurationManager}, whatever the backend. Calls are
+ * serialized by CameraManager. <br/>
+ * <br/>
+ *
+ * 相機後端：負責打開相機、送幀、閃光燈和縮放，有Camera1和Camera2兩種實現
+ */
+interface CameraBackend {
+
+    /**
+     * Opens the camera, if it is not open yet.
+     *
+     * @return What the camera supports.
+     * @throws IOException If the camera cannot be opened.
+     */
+    CameraProfile open() throws IOException;
+
+    boolean isOpen();
+
+    void setPreviewDisplay(SurfaceHolder holder) throws IOException;
+
+    void setPreviewTexture(SurfaceTexture surfaceTexture) throws IOException;
+
+    /**
+     * Applies the preview size chosen by the configuration manager and the
+     * other scanner settings.
+     */
+    void configure(CameraConfigurationManager configurationManager);
+
+    /**
+     * Starts streaming frames into the callback.
+     *
+     * @param bufferCount How many frames may be out at once, counting the
+     *                    one the camera is filling.
+     */
+    void startPreview(int bufferCount);
+
+    void stopPreview();
+
+    void close();
+
+    /**
+     * Asks for a focus run because the decoder sees blurred frames. May be
+     * called often and from any thread; the backend ignores requests while
+     * focusing or shortly after.
+     */
+    void requestFocus();
+
+    /**
+     * Tells that a frame was decoded, so the current focus is good. May be
+     * called from any thread.
+     */
+    void onDecodeSucceeded();
+
+    /**
+     * How many focus runs have ended since the backend was created, whether
+     * triggered or continuous. May be called from any thread.
+     */
+    int getFocusCount();
+
+    /**
+     * The clockwise rotation, in degrees, which turns a preview frame into
+     * the orientation of the screen. Valid once configured.
+     */
+    int getPreviewRotation();
+
+    boolean getTorchState();
+
+    void setTorch(boolean newSetting);
+
+    void zoomIn();
+
+    void zoomOut();
+
+    /**
+     * @param zoom 0 to {@link CameraProfile#getMaxZoom()}
+     */
+    void setZoom(int zoom);
+}
@@ -16,9 +16,12 @@
 
 package cn.hugo.android.scanner.camera;
 
+import com.google.zxing.BarcodeFormat;
+
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.hardware.Camera;
 import android.preference.PreferenceManager;
@@ -26,14 +29,11 @@ import android.util.Log;
 import android.view.Display;
 import android.view.WindowManager;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.List;
 
 import cn.hugo.android.scanner.config.Config;
+import cn.hugo.android.scanner.decode.DecodeFormatManager;
 
 /**
  * A class which deals with reading, parsing, and setting the camera parameters
@@ -56,6 +56,11 @@ public class CameraConfigurationManager {
     // private static final float MIN_EXPOSURE_COMPENSATION = 0.0f;
     private static final double MAX_ASPECT_DISTORTION = 0.15;
 
+    /**
+     * 豎屏顯示，預覽畫面需要順時針旋轉90度
+     */
+    private static final int DISPLAY_ORIENTATION = 90;
+
     private final Context mContext;
     /**
      * 螢幕解析度
@@ -67,15 +72,25 @@ public class CameraConfigurationManager {
      */
     private Point mCameraResolution;
 
+    /**
+     * 預覽幀格式，默認NV21
+     */
+    private int mPreviewFormat = ImageFormat.NV21;
+
     public CameraConfigurationManager(Context context) {
         this.mContext = context;
     }
 
+    /**
+     * 相機能力描述，避免重複解析相機參數
+     */
+    private CameraProfile mProfile;
+
     /**
      * Reads, one time, values from the camera that are needed by the app.
      */
-    void initFromCameraParameters(Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
+    void initFromCameraProfile(CameraProfile profile) {
+        mProfile = profile;
         WindowManager manager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
         Point theScreenResolution = new Point();
@@ -99,10 +114,30 @@ public class CameraConfigurationManager {
             screenResolutionForCamera.y = mScreenResolution.x;
         }
 
-        mCameraResolution = findBestPreviewSizeValue(parameters, screenResolutionForCamera);
+        mCameraResolution = findBestPreviewSizeValue(profile, screenResolutionForCamera, createPreviewSizeSelector());
         Log.i(TAG, "Camera resolution: " + mCameraResolution);
     }
 
+    /**
+     * 按設置中的格式和每像素解碼耗時建立預覽尺寸選擇器；開啟校準時第一次會計時測得耗時並保存
+     */
+    private PreviewSizeSelector createPreviewSizeSelector() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        Collection<BarcodeFormat> formats = DecodeFormatManager.parseDecodeFormats(prefs);
+        float nanosPerPixel = prefs.getFloat(Config.KEY_DECODE_NANOS_PER_PIXEL, 0.0f);
+        if (nanosPerPixel <= 0.0f) {
+            if (prefs.getBoolean(Config.KEY_CALIBRATE_DECODE_COST, false)) {
+                nanosPerPixel = DecodeCostCalibrator.measureNanosPerPixel(formats);
+                prefs.edit().putFloat(Config.KEY_DECODE_NANOS_PER_PIXEL, nanosPerPixel).apply();
+                Log.i(TAG, "Calibrated decode cost: " + nanosPerPixel + " ns/pixel");
+            } else {
+                nanosPerPixel = PreviewSizeSelector.DEFAULT_NANOS_PER_PIXEL;
+            }
+        }
+        int screenWidth = Math.min(mScreenResolution.x, mScreenResolution.y);
+        return new PreviewSizeSelector(formats, CameraManager.framingRectFraction(screenWidth), nanosPerPixel, PreviewSizeSelector.TARGET_DECODE_NANOS);
+    }
+
     @SuppressLint("NewApi")
     private Point getDisplaySize(final Display display) {
         final Point point = new Point();
@@ -115,15 +150,19 @@ public class CameraConfigurationManager {
         return point;
     }
 
-    void setDesiredCameraParameters(Camera camera, boolean safeMode) {
-        Camera.Parameters parameters = camera.getParameters();
-
+    /**
+     * @param parameters The camera's current parameters, to be changed and
+     *                   set.
+     */
+    void setDesiredCameraParameters(Camera camera, Camera.Parameters parameters, boolean safeMode) {
         if (parameters == null) {
             Log.w(TAG, "Device error: no camera parameters are available. Proceeding without configuration.");
             return;
         }
 
-        Log.i(TAG, "Initial camera parameters: " + parameters.flatten());
+        if (Log.isLoggable(TAG, Log.INFO)) {
+            Log.i(TAG, "Initial camera parameters: " + parameters.flatten());
+        }
 
         if (safeMode) {
             Log.w(TAG, "In camera config safe mode -- most settings will not be honored");
@@ -134,19 +173,27 @@ public class CameraConfigurationManager {
         // 初始化閃光燈
         initializeTorch(parameters, prefs, safeMode);
 
-        // 默認使用自動對焦
-        String focusMode = findSettableValue(parameters.getSupportedFocusModes(), Camera.Parameters.FOCUS_MODE_AUTO);
+        // 默認使用自動對焦；設備支持連續對焦時優先使用，由相機自行對焦
+        String focusMode = null;
+        if (prefs.getBoolean(Config.KEY_AUTO_FOCUS, true)) {
+            if (safeMode || prefs.getBoolean(Config.KEY_DISABLE_CONTINUOUS_FOCUS, false)) {
+                focusMode = findSettableValue(mProfile.getFocusModes(), Camera.Parameters.FOCUS_MODE_AUTO);
+            } else {
+                focusMode = findSettableValue(mProfile.getFocusModes(), Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
+                        Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO, Camera.Parameters.FOCUS_MODE_AUTO);
+            }
+        }
 
         // Maybe selected auto-focus but not available, so fall through here:
         if (!safeMode && focusMode == null) {
-            focusMode = findSettableValue(parameters.getSupportedFocusModes(), Camera.Parameters.FOCUS_MODE_MACRO, Camera.Parameters.FOCUS_MODE_EDOF);
+            focusMode = findSettableValue(mProfile.getFocusModes(), Camera.Parameters.FOCUS_MODE_MACRO, Camera.Parameters.FOCUS_MODE_EDOF);
         }
         if (focusMode != null) {
             parameters.setFocusMode(focusMode);
         }
 
         if (prefs.getBoolean(Config.KEY_INVERT_SCAN, false)) {
-            String colorMode = findSettableValue(parameters.getSupportedColorEffects(), Camera.Parameters.EFFECT_NEGATIVE);
+            String colorMode = findSettableValue(mProfile.getColorEffects(), Camera.Parameters.EFFECT_NEGATIVE);
             if (colorMode != null) {
                 parameters.setColorEffect(colorMode);
             }
@@ -163,23 +210,38 @@ public class CameraConfigurationManager {
             mCameraResolution.x = afterSize.width;
             mCameraResolution.y = afterSize.height;
         }
+        mPreviewFormat = afterParameters.getPreviewFormat();
 
-        camera.setDisplayOrientation(90);
+        camera.setDisplayOrientation(DISPLAY_ORIENTATION);
     }
 
     public Point getCameraResolution() {
         return mCameraResolution;
     }
 
+    /**
+     * The {@link ImageFormat} of the preview frames.
+     */
+    public int getPreviewFormat() {
+        return mPreviewFormat;
+    }
+
     public Point getScreenResolution() {
         return mScreenResolution;
     }
 
+    /**
+     * 預覽幀需要順時針旋轉的角度，與設置給相機的顯示方向一致
+     */
+    public int getDisplayOrientation() {
+        return DISPLAY_ORIENTATION;
+    }
+
     public boolean getTorchState(Camera camera) {
-        if (camera != null) {
+        if (camera != null && mProfile.hasTorch()) {
             Camera.Parameters parameters = camera.getParameters();
             if (parameters != null) {
-                String flashMode = camera.getParameters().getFlashMode();
+                String flashMode = parameters.getFlashMode();
                 return flashMode != null && (Camera.Parameters.FLASH_MODE_ON.equals(flashMode) || Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode));
             }
         }
@@ -187,6 +249,9 @@ public class CameraConfigurationManager {
     }
 
     public void setTorch(Camera camera, boolean newSetting) {
+        if (!mProfile.hasTorch()) {
+            return;
+        }
         Camera.Parameters parameters = camera.getParameters();
         doSetTorch(parameters, newSetting, false);
         camera.setParameters(parameters);
@@ -200,9 +265,9 @@ public class CameraConfigurationManager {
     private void doSetTorch(Camera.Parameters parameters, boolean newSetting, boolean safeMode) {
         String flashMode;
         if (newSetting) {
-            flashMode = findSettableValue(parameters.getSupportedFlashModes(), Camera.Parameters.FLASH_MODE_TORCH, Camera.Parameters.FLASH_MODE_ON);
+            flashMode = findSettableValue(mProfile.getFlashModes(), Camera.Parameters.FLASH_MODE_TORCH, Camera.Parameters.FLASH_MODE_ON);
         } else {
-            flashMode = findSettableValue(parameters.getSupportedFlashModes(), Camera.Parameters.FLASH_MODE_OFF);
+            flashMode = findSettableValue(mProfile.getFlashModes(), Camera.Parameters.FLASH_MODE_OFF);
         }
         if (flashMode != null) {
             parameters.setFlashMode(flashMode);
@@ -210,37 +275,20 @@ public class CameraConfigurationManager {
     }
 
     /**
-     * 從相機支援的解析度中計算出最適合的預覽介面尺寸
+     * 從相機支援的解析度中計算出最適合的預覽介面尺寸：比例與螢幕相近的尺寸中，
+     * 由selector按解碼需要的像素和耗時挑選
      */
-    private Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
-        List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
-        if (rawSupportedSizes == null) {
+    private Point findBestPreviewSizeValue(CameraProfile profile, Point screenResolution, PreviewSizeSelector selector) {
+        int count = profile.getPreviewSizeCount();
+        if (count == 0) {
             Log.w(TAG, "Device returned no supported preview sizes; using default");
-            Camera.Size defaultSize = parameters.getPreviewSize();
-            return new Point(defaultSize.width, defaultSize.height);
+            return new Point(profile.getDefaultPreviewWidth(), profile.getDefaultPreviewHeight());
         }
 
-        // Sort by size, descending
-        List<Camera.Size> supportedPreviewSizes = new ArrayList<Camera.Size>(rawSupportedSizes);
-        Collections.sort(supportedPreviewSizes, new Comparator<Camera.Size>() {
-            @Override
-            public int compare(Camera.Size a, Camera.Size b) {
-                int aPixels = a.height * a.width;
-                int bPixels = b.height * b.width;
-                if (bPixels < aPixels) {
-                    return -1;
-                }
-                if (bPixels > aPixels) {
-                    return 1;
-                }
-                return 0;
-            }
-        });
-
         if (Log.isLoggable(TAG, Log.INFO)) {
             StringBuilder previewSizesString = new StringBuilder();
-            for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
-                previewSizesString.append(supportedPreviewSize.width).append('x').append(supportedPreviewSize.height).append(' ');
+            for (int i = 0; i < count; i++) {
+                previewSizesString.append(profile.getPreviewWidth(i)).append('x').append(profile.getPreviewHeight(i)).append(' ');
             }
             Log.i(TAG, "Supported preview sizes: " + previewSizesString);
         }
@@ -248,13 +296,13 @@ public class CameraConfigurationManager {
         double screenAspectRatio = (double) screenResolution.x / (double) screenResolution.y;
 
         // Remove sizes that are unsuitable
-        Iterator<Camera.Size> it = supportedPreviewSizes.iterator();
-        while (it.hasNext()) {
-            Camera.Size supportedPreviewSize = it.next();
-            int realWidth = supportedPreviewSize.width;
-            int realHeight = supportedPreviewSize.height;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        int suitable = 0;
+        for (int i = 0; i < count; i++) {
+            int realWidth = profile.getPreviewWidth(i);
+            int realHeight = profile.getPreviewHeight(i);
             if (realWidth * realHeight < MIN_PREVIEW_PIXELS) {
-                it.remove();
                 continue;
             }
 
@@ -264,33 +312,27 @@ public class CameraConfigurationManager {
             double aspectRatio = (double) maybeFlippedWidth / (double) maybeFlippedHeight;
             double distortion = Math.abs(aspectRatio - screenAspectRatio);
             if (distortion > MAX_ASPECT_DISTORTION) {
-                it.remove();
                 continue;
             }
-
-            if (maybeFlippedWidth == screenResolution.x &&
-                    maybeFlippedHeight == screenResolution.y) {
-                Point exactPoint = new Point(realWidth, realHeight);
-                Log.i(TAG, "Found preview size exactly matching screen size: " + exactPoint);
-                return exactPoint;
-            }
+            widths[suitable] = realWidth;
+            heights[suitable] = realHeight;
+            suitable++;
         }
 
-        // If no exact match, use largest preview size. This was not a great
-        // idea on older devices because
-        // of the additional computation needed. We're likely to get here on
-        // newer Android 4+ devices, where
-        // the CPU is much more powerful.
-        if (!supportedPreviewSizes.isEmpty()) {
-            Camera.Size largestPreview = supportedPreviewSizes.get(0);
-            Point largestSize = new Point(largestPreview.width, largestPreview.height);
-            Log.i(TAG, "Using largest suitable preview size: " + largestSize);
-            return largestSize;
+        // 不再優先取與螢幕相同或最大的尺寸：1080p以上的預覽解碼往往跟不上
+        if (suitable > 0) {
+            widths = Arrays.copyOf(widths, suitable);
+            heights = Arrays.copyOf(heights, suitable);
+            int index = selector.select(widths, heights);
+            Point selectedSize = new Point(widths[index], heights[index]);
+            Log.i(TAG, "Using preview size " + selectedSize + ": framing rect " + selector.rectPixels(widths[index], heights[index])
+                    + "px (need " + selector.getRequiredRectPixels() + "px, prefer " + selector.getPreferredRectPixels()
+                    + "px), estimated decode " + selector.estimateDecodeNanos(widths[index], heights[index]) / 1000L + "us");
+            return selectedSize;
         }
 
         // If there is nothing at all suitable, return current preview size
-        Camera.Size defaultPreview = parameters.getPreviewSize();
-        Point defaultSize = new Point(defaultPreview.width, defaultPreview.height);
+        Point defaultSize = new Point(profile.getDefaultPreviewWidth(), profile.getDefaultPreviewHeight());
         Log.i(TAG, "No suitable preview sizes, using default: " + defaultSize);
         return defaultSize;
     }
@@ -16,18 +16,20 @@
 
 package cn.hugo.android.scanner.camera;
 
-import com.google.zxing.PlanarYUVLuminanceSource;
-
 import android.content.Context;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
-import android.hardware.Camera;
+import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This object wraps the Camera service object and expects to be the only one
@@ -41,18 +43,55 @@ import java.io.IOException;
  */
 public class CameraManager {
     private static final String TAG = CameraManager.class.getSimpleName();
+
+    /**
+     * Reports the outcome of {@link #openDriverAsync}, on the main thread.
+     */
+    public interface OpenCallback {
+        /**
+         * The camera is open and previewing.
+         */
+        void onCameraOpened();
+
+        void onCameraOpenFailed(Exception e);
+    }
+
+    /**
+     * Which camera API talks to the device.
+     */
+    public enum Backend {
+        /**
+         * android.hardware.Camera, NV21 preview buffers
+         */
+        CAMERA1,
+        /**
+         * android.hardware.camera2, YUV_420_888 images; API 21 and up
+         */
+        CAMERA2
+    }
+
     private static final int MIN_FRAME_WIDTH = 240;
     private static final int MAX_FRAME_WIDTH = 1200; // = 5/8 * 1920
+    private static final int DEFAULT_PREVIEW_BUFFER_COUNT = 3;
+
+    /**
+     * requestTorch造成的兩次閃光燈改變之間的最短間隔
+     */
+    private static final long MIN_TORCH_INTERVAL_MS = 2000L;
     private final Context mContext;
     private final CameraConfigurationManager mCameraConfigurationManager;
-    private Camera mCamera;
-    private AutoFocusManager mAutoFocusManager;
+    private final CameraBackend mBackend;
     private Rect mFramingRect;
     private Rect mFramingRectInPreview;
     private boolean mInitialized;
-    private boolean mPreviewing;
     private int mRequestedFramingRectWidth;
     private int mRequestedFramingRectHeight;
+    private int mPreviewBufferCount = DEFAULT_PREVIEW_BUFFER_COUNT;
+
+    /**
+     * 預覽幀的去處，為null時幀直接歸還給相機
+     */
+    private FrameMailbox mFrameMailbox;
 
     /**
      * Preview frames are delivered here, which we pass on to the registered
@@ -61,10 +100,66 @@ public class CameraManager {
      */
     private final PreviewCallback mPreviewCallback;
 
+    /**
+     * 打開相機的線程，相機的回調（預覽幀、對焦）也在這個線程上執行
+     */
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 每次異步打開或關閉相機時加一，過期的打開任務和回調據此丟棄
+     */
+    private final AtomicInteger mOpenGeneration = new AtomicInteger();
+
+    /**
+     * 異步打開期間持有，保證上一次（已過期的）打開收尾之後才開始下一次
+     */
+    private final Object mOpenLock = new Object();
+
+    /**
+     * 相機已打開並可供其他方法使用；異步打開在不持有this鎖的情況下進行，完成後才設為true
+     */
+    private volatile boolean mOpen;
+
+    /**
+     * requestTorch期望的閃光燈狀態，由相機線程上的mApplyTorch合併套用
+     */
+    private boolean mRequestedTorch;
+    private boolean mTorchRequested;
+    private boolean mTorchUpdatePending;
+    private long mLastTorchChange;
+
+    private final Runnable mApplyTorch = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CameraManager.this) {
+                mTorchUpdatePending = false;
+                applyTorch(mRequestedTorch);
+            }
+        }
+    };
+
     public CameraManager(Context context) {
+        this(context, Backend.CAMERA1);
+    }
+
+    /**
+     * @param backend {@link Backend#CAMERA2} falls back to CAMERA1 below API 21.
+     */
+    public CameraManager(Context context, Backend backend) {
         this.mContext = context;
         this.mCameraConfigurationManager = new CameraConfigurationManager(context);
-        mPreviewCallback = new PreviewCallback(mCameraConfigurationManager);
+        mPreviewCallback = new PreviewCallback();
+        if (backend == Backend.CAMERA2 && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            Log.w(TAG, "Camera2 needs API 21, using Camera1");
+            backend = Backend.CAMERA1;
+        }
+        if (backend == Backend.CAMERA2) {
+            mBackend = new Camera2Backend(context, mPreviewCallback);
+        } else {
+            mBackend = new LegacyCameraBackend(context, mCameraConfigurationManager, mPreviewCallback);
+        }
     }
 
     /**
@@ -74,110 +169,154 @@ public class CameraManager {
      * @throws IOException Indicates the mCamera driver failed to open.
      */
     public synchronized void openDriver(SurfaceHolder holder) throws IOException {
-        Camera camera = mCamera;
-        if (camera == null) {
-            // 獲取手機背面的攝像頭
-            camera = OpenCameraInterface.open();
-            if (camera == null) {
-                throw new IOException();
-            }
-            mCamera = camera;
-        }
+        CameraProfile profile = mBackend.open();
 
         // 設置攝像頭預覽view
-        camera.setPreviewDisplay(holder);
+        mBackend.setPreviewDisplay(holder);
+        initFromProfile(profile);
+        mBackend.configure(mCameraConfigurationManager);
+        mOpen = true;
+    }
+
+    public synchronized void openDriver(SurfaceTexture surfaceTexture) throws IOException {
+        CameraProfile profile = mBackend.open();
 
+        // 設置攝像頭預覽view
+        mBackend.setPreviewTexture(surfaceTexture);
+        initFromProfile(profile);
+        mBackend.configure(mCameraConfigurationManager);
+        mOpen = true;
+    }
+
+    /**
+     * 第一次打開時按相機能力初始化設定，調用時須持有this鎖
+     */
+    private void initFromProfile(CameraProfile profile) {
         if (!mInitialized) {
             mInitialized = true;
-            mCameraConfigurationManager.initFromCameraParameters(camera);
+            mCameraConfigurationManager.initFromCameraProfile(profile);
             if (mRequestedFramingRectWidth > 0 && mRequestedFramingRectHeight > 0) {
                 setManualFramingRect(mRequestedFramingRectWidth, mRequestedFramingRectHeight);
                 mRequestedFramingRectWidth = 0;
                 mRequestedFramingRectHeight = 0;
             }
         }
+    }
 
-        Camera.Parameters parameters = camera.getParameters();
-        String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these temporarily
-        try {
-            mCameraConfigurationManager.setDesiredCameraParameters(camera, false);
-        } catch (RuntimeException re) {
-            // Driver failed
-            Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
-            Log.i(TAG, "Resetting to saved mCamera params: " + parametersFlattened);
-            // Reset:
-            if (parametersFlattened != null) {
-                parameters = camera.getParameters();
-                parameters.unflatten(parametersFlattened);
-                try {
-                    camera.setParameters(parameters);
-                    mCameraConfigurationManager.setDesiredCameraParameters(camera, true);
-                } catch (RuntimeException re2) {
-                    // Well, darn. Give up
-                    Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+    /**
+     * Opens the camera and starts the preview on a dedicated camera thread,
+     * so that Camera.open and startPreview don't block the UI thread. Set the
+     * preview buffer count before calling this. If {@link #closeDriver()} or
+     * another open comes first, the pending open is skipped, or closes the
+     * camera again and drops its callback. The open does not hold this
+     * object's lock while it waits for the camera, so getters such as
+     * {@link #getFramingRect()} never stall the UI thread.
+     * <br/>
+     * 在相機線程上打開相機並開始預覽，完成後在主線程回調
+     */
+    public synchronized void openDriverAsync(final SurfaceTexture surfaceTexture, final OpenCallback callback) {
+        final int generation = mOpenGeneration.incrementAndGet();
+        cameraHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                Exception error = null;
+                synchronized (mOpenLock) {
+                    if (generation != mOpenGeneration.get()) {
+                        return;
+                    }
+                    try {
+                        openInBackground(surfaceTexture, generation);
+                    } catch (IOException ioe) {
+                        error = ioe;
+                    } catch (RuntimeException re) {
+                        // Fail to connect to camera service
+                        error = re;
+                    }
+                    if (error != null) {
+                        // 打開到一半失敗，收掉已經打開的部分
+                        mBackend.close();
+                    }
                 }
+                final Exception failure = error;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 等待期間已經關閉（例如onPause）則不再回調
+                        if (generation != mOpenGeneration.get()) {
+                            return;
+                        }
+                        if (failure == null) {
+                            callback.onCameraOpened();
+                        } else {
+                            callback.onCameraOpenFailed(failure);
+                        }
+                    }
+                });
             }
-        }
+        });
     }
 
-    public synchronized void openDriver(SurfaceTexture surfaceTexture) throws IOException {
-        Camera camera = mCamera;
-        if (camera == null) {
-            // 獲取手機背面的攝像頭
-            camera = OpenCameraInterface.open();
-            if (camera == null) {
-                throw new IOException();
-            }
-            mCamera = camera;
+    /**
+     * The blocking part of {@link #openDriverAsync}, on the camera thread.
+     * Only the bookkeeping takes this object's lock. Nothing else uses the
+     * backend meanwhile, as every other call waits for {@link #mOpen};
+     * closeDriver only moves the generation on, and an open which has gone
+     * stale closes the camera again here instead of publishing it.
+     */
+    private void openInBackground(SurfaceTexture surfaceTexture, int generation) throws IOException {
+        CameraProfile profile = mBackend.open();
+        mBackend.setPreviewTexture(surfaceTexture);
+        int bufferCount;
+        synchronized (this) {
+            initFromProfile(profile);
+            bufferCount = mPreviewBufferCount;
         }
-
-        // 設置攝像頭預覽view
-        camera.setPreviewTexture(surfaceTexture);
-        if (!mInitialized) {
-            mInitialized = true;
-            mCameraConfigurationManager.initFromCameraParameters(camera);
-            if (mRequestedFramingRectWidth > 0 && mRequestedFramingRectHeight > 0) {
-                setManualFramingRect(mRequestedFramingRectWidth, mRequestedFramingRectHeight);
-                mRequestedFramingRectWidth = 0;
-                mRequestedFramingRectHeight = 0;
+        mBackend.configure(mCameraConfigurationManager);
+        mBackend.startPreview(bufferCount);
+        synchronized (this) {
+            if (generation != mOpenGeneration.get()) {
+                // 打開期間已經關閉
+                mBackend.close();
+                return;
             }
-        }
-
-        Camera.Parameters parameters = camera.getParameters();
-        String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these temporarily
-        try {
-            mCameraConfigurationManager.setDesiredCameraParameters(camera, false);
-        } catch (RuntimeException re) {
-            // Driver failed
-            Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
-            Log.i(TAG, "Resetting to saved mCamera params: " + parametersFlattened);
-            // Reset:
-            if (parametersFlattened != null) {
-                parameters = camera.getParameters();
-                parameters.unflatten(parametersFlattened);
-                try {
-                    camera.setParameters(parameters);
-                    mCameraConfigurationManager.setDesiredCameraParameters(camera, true);
-                } catch (RuntimeException re2) {
-                    // Well, darn. Give up
-                    Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
-                }
+            mOpen = true;
+            if (mTorchRequested) {
+                // 相機關閉期間收到的閃光燈請求
+                applyTorch(mRequestedTorch);
             }
         }
+    }
 
+    private Handler cameraHandler() {
+        if (mCameraThread == null) {
+            mCameraThread = new HandlerThread("CameraThread");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+        }
+        return mCameraHandler;
     }
 
-    public synchronized boolean isOpen() {
-        return mCamera != null;
+    public boolean isOpen() {
+        return mOpen;
     }
 
     /**
-     * Closes the mCamera driver if still in use.
+     * Closes the mCamera driver if still in use. An asynchronous open still
+     * queued is skipped, one still running closes the camera itself when it
+     * is done.
      */
     public synchronized void closeDriver() {
-        if (mCamera != null) {
-            mCamera.release();
-            mCamera = null;
+        mOpenGeneration.incrementAndGet();
+        if (mCameraThread != null) {
+            // 尚未套用的閃光燈請求隨線程一起丟棄
+            mCameraThread.quit();
+            mCameraThread = null;
+            mCameraHandler = null;
+        }
+        mTorchUpdatePending = false;
+        if (mOpen) {
+            mOpen = false;
+            mBackend.close();
             // Make sure to clear these each time we close the mCamera, so that
             // any scanning rect
             // requested by intent is forgotten.
@@ -190,15 +329,17 @@ public class CameraManager {
      * Asks the mCamera hardware to begin drawing preview frames to the screen.
      */
     public synchronized void startPreview() {
-        Camera theCamera = mCamera;
-        if (theCamera != null && !mPreviewing) {
-            // Starts capturing and drawing preview frames to the screen
-            // Preview will not actually start until a surface is supplied with
-            // setPreviewDisplay(SurfaceHolder) or
-            // setPreviewTexture(SurfaceTexture).
-            theCamera.startPreview();
-            mPreviewing = true;
-            mAutoFocusManager = new AutoFocusManager(mContext, mCamera);
+        // Starts capturing and drawing preview frames to the screen
+        // Preview will not actually start until a surface is supplied with
+        // setPreviewDisplay(SurfaceHolder) or
+        // setPreviewTexture(SurfaceTexture).
+        if (!mOpen) {
+            return;
+        }
+        mBackend.startPreview(mPreviewBufferCount);
+        if (mTorchRequested) {
+            // 相機關閉期間收到的閃光燈請求
+            applyTorch(mRequestedTorch);
         }
     }
 
@@ -206,54 +347,114 @@ public class CameraManager {
      * Tells the mCamera to stop drawing preview frames.
      */
     public synchronized void stopPreview() {
-        if (mAutoFocusManager != null) {
-            mAutoFocusManager.stop();
-            mAutoFocusManager = null;
+        if (mOpen) {
+            mBackend.stopPreview();
         }
-        if (mCamera != null && mPreviewing) {
-            mCamera.stopPreview();
-            mPreviewCallback.setHandler(null, 0);
-            mPreviewing = false;
+        setFrameMailbox(null);
+    }
+
+    /**
+     * Sets how many preview buffers the camera cycles through. Takes effect
+     * on the next {@link #startPreview()}. Every frame which is being decoded
+     * holds one buffer, so this should exceed the number of decode workers.
+     */
+    public synchronized void setPreviewBufferCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Need at least one preview buffer: " + count);
+        }
+        mPreviewBufferCount = count;
+    }
+
+    /**
+     * Gives a frame taken from the {@link FrameMailbox} set with
+     * {@link #setFrameMailbox(FrameMailbox)} back to the camera. Call it as soon as the
+     * frame data is no longer read; may be called from any thread.
+     */
+    public void releasePreviewFrame(PreviewFrame frame) {
+        if (frame != null) {
+            frame.release();
         }
     }
 
+    /**
+     * Asks the camera to focus again, e.g. because the frames are blurred.
+     * Cheap to call from the decode threads for every such frame: requests
+     * during a focus run or shortly after one are ignored.
+     */
+    public void requestFocus() {
+        mBackend.requestFocus();
+    }
+
+    /**
+     * Tells the camera a frame was just decoded, which postpones periodic
+     * focus runs. May be called from the decode threads.
+     */
+    public void onDecodeSucceeded() {
+        mBackend.onDecodeSucceeded();
+    }
+
+    /**
+     * Counts the focus runs which have ended. The decoder compares it from
+     * frame to frame to tell that the picture may have sharpened. May be
+     * called from the decode threads.
+     */
+    public int getFocusCount() {
+        return mBackend.getFocusCount();
+    }
+
     /**
      * Convenience method for
      * {@link }
      */
     public synchronized void setTorch(boolean newSetting) {
-        if (newSetting != mCameraConfigurationManager.getTorchState(mCamera)) {
-            if (mCamera != null) {
-                if (mAutoFocusManager != null) {
-                    mAutoFocusManager.stop();
-                }
-                mCameraConfigurationManager.setTorch(mCamera, newSetting);
-                if (mAutoFocusManager != null) {
-                    mAutoFocusManager.start();
-                }
-            }
-        }
+        // 手動設置覆蓋尚未套用的自動請求
+        mRequestedTorch = newSetting;
+        mTorchRequested = true;
+        applyTorch(newSetting);
+    }
+
+    public synchronized boolean getTorchState() {
+        return mOpen && mBackend.getTorchState();
     }
 
     /**
-     * A single preview frame will be returned to the handler supplied. The data
-     * will arrive as byte[] in the message.obj field, with width and height
-     * encoded as message.arg1 and message.arg2, respectively. <br/>
-     *
-     * 兩個綁定操作：<br/>
-     * 1：將handler與回調函數綁定；<br/>
-     * 2：將相機與回調函數綁定<br/>
-     * 綜上，該函數的作用是當相機的預覽介面準備就緒後就會調用hander向其發送傳入的message
+     * Asks for the torch to be switched, e.g. by the ambient light sensor.
+     * Only the latest request counts: it is applied on the camera thread,
+     * at least {@link #MIN_TORCH_INTERVAL_MS} after the previous change, so
+     * requests flipping back and forth within that time cost the camera
+     * nothing. A request made while the camera is closed is applied once
+     * the preview starts. <br/>
      *
-     * @param handler The handler to send the message to.
-     * @param message The what field of the message to be sent.
-     */
-    public synchronized void requestPreviewFrame(Handler handler, int message) {
-        Camera theCamera = mCamera;
-        if (theCamera != null && mPreviewing) {
-            mPreviewCallback.setHandler(handler, message);
-            // 綁定相機回調函數，當預覽介面準備就緒後會回調Camera.PreviewCallback.onPreviewFrame
-            theCamera.setOneShotPreviewCallback(mPreviewCallback);
+     * 在相機線程上合併套用閃光燈請求，兩次改變之間至少間隔MIN_TORCH_INTERVAL_MS
+     */
+    public synchronized void requestTorch(boolean on) {
+        mRequestedTorch = on;
+        mTorchRequested = true;
+        if (mOpen && !mTorchUpdatePending) {
+            mTorchUpdatePending = true;
+            long delay = Math.max(0L, mLastTorchChange + MIN_TORCH_INTERVAL_MS - SystemClock.uptimeMillis());
+            cameraHandler().postDelayed(mApplyTorch, delay);
+        }
+    }
+
+    private void applyTorch(boolean on) {
+        if (mOpen && on != mBackend.getTorchState()) {
+            mBackend.setTorch(on);
+            mLastTorchChange = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Publishes every preview frame into the given mailbox until this is
+     * called again with null. A frame still waiting in the old mailbox is
+     * given back to the camera.
+     */
+    public synchronized void setFrameMailbox(FrameMailbox mailbox) {
+        FrameMailbox old = mFrameMailbox;
+        mFrameMailbox = mailbox;
+        mPreviewCallback.setMailbox(mailbox);
+        if (old != null && old != mailbox) {
+            releasePreviewFrame(old.clear());
         }
     }
 
@@ -267,7 +468,7 @@ public class CameraManager {
      */
     public synchronized Rect getFramingRect() {
         if (mFramingRect == null) {
-            if (mCamera == null) {
+            if (!mOpen) {
                 return null;
             }
             Point screenResolution = mCameraConfigurationManager.getScreenResolution();
@@ -287,6 +488,13 @@ public class CameraManager {
         return mFramingRect;
     }
 
+    /**
+     * 自動計算的掃描框邊長佔螢幕寬度的比例
+     */
+    static float framingRectFraction(int screenWidth) {
+        return (float) findDesiredDimensionInRange(screenWidth, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH) / screenWidth;
+    }
+
     /**
      * Target 5/8 of each dimension<br/>
      * 計算結果在hardMin~hardMax之間
@@ -359,48 +567,28 @@ public class CameraManager {
     }
 
     /**
-     * A factory method to build the appropriate LuminanceSource object based on
-     * the format of the preview buffers, as described by Camera.Parameters.
-     *
-     * @param data   A preview frame.
-     * @param width  The width of the image.
-     * @param height The height of the image.
-     * @return A PlanarYUVLuminanceSource instance.
-     */
-    public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
-        Rect rect = getFramingRectInPreview();
-        if (rect == null) {
-            return null;
-        }
-        // Go ahead and assume it's YUV rather than die.
-        return new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top, rect.width(), rect.height(), false);
+     * The clockwise rotation, in degrees, which turns a preview frame into the
+     * orientation of {@link #getFramingRectInPreview()}.
+     */
+    public int getPreviewRotation() {
+        return mBackend.getPreviewRotation();
     }
 
     /**
      * 焦點放小
      */
-    public void zoomOut() {
-        if (mCamera != null && mCamera.getParameters().isZoomSupported()) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            if (parameters.getZoom() <= 0) {
-                return;
-            }
-            parameters.setZoom(parameters.getZoom() - 1);
-            mCamera.setParameters(parameters);
+    public synchronized void zoomOut() {
+        if (mOpen) {
+            mBackend.zoomOut();
         }
     }
 
     /**
      * 焦點放大
      */
-    public void zoomIn() {
-        if (mCamera != null && mCamera.getParameters().isZoomSupported()) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            if (parameters.getZoom() >= parameters.getMaxZoom()) {
-                return;
-            }
-            parameters.setZoom(parameters.getZoom() + 1);
-            mCamera.setParameters(parameters);
+    public synchronized void zoomIn() {
+        if (mOpen) {
+            mBackend.zoomIn();
         }
     }
 
@@ -409,14 +597,9 @@ public class CameraManager {
      *
      * @param scale
      */
-    public void setCameraZoom(int scale) {
-        if (mCamera != null &&
-                mCamera.getParameters().isZoomSupported() &&
-                scale <= mCamera.getParameters().getMaxZoom() && scale >= 0) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            parameters.setZoom(scale);
-            mCamera.setParameters(parameters);
+    public synchronized void setCameraZoom(int scale) {
+        if (mOpen) {
+            mBackend.setZoom(scale);
         }
     }
 }
-
@@ -0,0 +1,285 @@
+package cn.hugo.android.scanner.camera;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a camera supports, as far as the scanner cares: preview sizes, focus,
+ * flash, color effect and zoom. Reading these from
+ * {@link Camera#getParameters()} means parsing the driver's whole parameter
+ * string, so they are read once per camera and OS build and kept in a small
+ * binary file; later starts read that instead. A file written for another
+ * camera or build is ignored and replaced. <br/>
+ * <br/>
+ *
+ * 相機能力描述：首次讀取相機參數後以二進制檔保存（按相機id和系統版本區分），之後的冷啟動直接讀檔
+ */
+final class CameraProfile {
+    private static final String TAG = CameraProfile.class.getSimpleName();
+
+    private static final int MAGIC = 0x43505246; // "CPRF"
+    private static final int VERSION = 1;
+
+    private final int mCameraId;
+    private final String mBuild;
+    private final int[] mPreviewWidths;
+    private final int[] mPreviewHeights;
+    private final int mDefaultPreviewWidth;
+    private final int mDefaultPreviewHeight;
+    private final List<String> mFocusModes;
+    private final List<String> mFlashModes;
+    private final List<String> mColorEffects;
+    private final boolean mZoomSupported;
+    private final int mMaxZoom;
+    private final int[] mZoomRatios;
+
+    CameraProfile(int cameraId, String build, int[] previewWidths, int[] previewHeights, int defaultPreviewWidth, int defaultPreviewHeight,
+                  List<String> focusModes, List<String> flashModes, List<String> colorEffects, boolean zoomSupported, int maxZoom, int[] zoomRatios) {
+        if (previewWidths.length != previewHeights.length) {
+            throw new IllegalArgumentException("Got " + previewWidths.length + " widths but " + previewHeights.length + " heights");
+        }
+        this.mCameraId = cameraId;
+        this.mBuild = build;
+        this.mPreviewWidths = previewWidths;
+        this.mPreviewHeights = previewHeights;
+        this.mDefaultPreviewWidth = defaultPreviewWidth;
+        this.mDefaultPreviewHeight = defaultPreviewHeight;
+        this.mFocusModes = unmodifiable(focusModes);
+        this.mFlashModes = unmodifiable(flashModes);
+        this.mColorEffects = unmodifiable(colorEffects);
+        this.mZoomSupported = zoomSupported;
+        this.mMaxZoom = maxZoom;
+        this.mZoomRatios = zoomRatios;
+    }
+
+    /**
+     * Reads the profile of an open camera, from the cache file if it is
+     * still valid, otherwise from the camera, and then caches it.
+     */
+    static CameraProfile load(Context context, int cameraId, Camera camera) {
+        File file = new File(context.getFilesDir(), "camera_profile_" + cameraId + ".bin");
+        String build = Build.FINGERPRINT;
+        if (file.isFile()) {
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    CameraProfile profile = readFrom(in, cameraId, build);
+                    if (profile != null) {
+                        return profile;
+                    }
+                    Log.i(TAG, "Camera profile is stale, rereading");
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ioe) {
+                Log.w(TAG, "Cannot read camera profile: " + ioe);
+            }
+        }
+
+        CameraProfile profile = fromParameters(cameraId, build, camera.getParameters());
+        // 先寫臨時檔再改名，讀到的不會是寫了一半的檔
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                profile.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Cannot rename " + tmp + " to " + file);
+            }
+        } catch (IOException ioe) {
+            Log.w(TAG, "Cannot write camera profile: " + ioe);
+        }
+        return profile;
+    }
+
+    static CameraProfile fromParameters(int cameraId, String build, Camera.Parameters parameters) {
+        List<Camera.Size> sizes = parameters.getSupportedPreviewSizes();
+        int count = sizes == null ? 0 : sizes.size();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = sizes.get(i).width;
+            heights[i] = sizes.get(i).height;
+        }
+        Camera.Size defaultSize = parameters.getPreviewSize();
+        boolean zoomSupported = parameters.isZoomSupported();
+        int[] zoomRatios = new int[0];
+        List<Integer> ratios = zoomSupported ? parameters.getZoomRatios() : null;
+        if (ratios != null) {
+            zoomRatios = new int[ratios.size()];
+            for (int i = 0; i < zoomRatios.length; i++) {
+                zoomRatios[i] = ratios.get(i);
+            }
+        }
+        return new CameraProfile(cameraId, build, widths, heights, defaultSize.width, defaultSize.height,
+                parameters.getSupportedFocusModes(), parameters.getSupportedFlashModes(), parameters.getSupportedColorEffects(),
+                zoomSupported, zoomSupported ? parameters.getMaxZoom() : 0, zoomRatios);
+    }
+
+    void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(mCameraId);
+        out.writeUTF(mBuild);
+        out.writeShort(mPreviewWidths.length);
+        for (int i = 0; i < mPreviewWidths.length; i++) {
+            out.writeShort(mPreviewWidths[i]);
+            out.writeShort(mPreviewHeights[i]);
+        }
+        out.writeShort(mDefaultPreviewWidth);
+        out.writeShort(mDefaultPreviewHeight);
+        writeStrings(out, mFocusModes);
+        writeStrings(out, mFlashModes);
+        writeStrings(out, mColorEffects);
+        out.writeBoolean(mZoomSupported);
+        out.writeShort(mMaxZoom);
+        out.writeShort(mZoomRatios.length);
+        for (int ratio : mZoomRatios) {
+            out.writeShort(ratio);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return The profile, or null if it was written for another camera,
+     * build or file version.
+     * @throws IOException If the stream is truncated or not a profile.
+     */
+    static CameraProfile readFrom(InputStream stream, int cameraId, String build) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a camera profile");
+        }
+        if (in.readByte() != VERSION || in.readInt() != cameraId || !in.readUTF().equals(build)) {
+            return null;
+        }
+        int count = in.readUnsignedShort();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = in.readUnsignedShort();
+            heights[i] = in.readUnsignedShort();
+        }
+        int defaultWidth = in.readUnsignedShort();
+        int defaultHeight = in.readUnsignedShort();
+        List<String> focusModes = readStrings(in);
+        List<String> flashModes = readStrings(in);
+        List<String> colorEffects = readStrings(in);
+        boolean zoomSupported = in.readBoolean();
+        int maxZoom = in.readUnsignedShort();
+        int[] zoomRatios = new int[in.readUnsignedShort()];
+        for (int i = 0; i < zoomRatios.length; i++) {
+            zoomRatios[i] = in.readUnsignedShort();
+        }
+        return new CameraProfile(cameraId, build, widths, heights, defaultWidth, defaultHeight,
+                focusModes, flashModes, colorEffects, zoomSupported, maxZoom, zoomRatios);
+    }
+
+    /**
+     * null寫為-1，與相機返回null（不支持）區分
+     */
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readShort();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static List<String> unmodifiable(List<String> values) {
+        return values == null ? null : Collections.unmodifiableList(new ArrayList<String>(values));
+    }
+
+    int getCameraId() {
+        return mCameraId;
+    }
+
+    int getPreviewSizeCount() {
+        return mPreviewWidths.length;
+    }
+
+    int getPreviewWidth(int index) {
+        return mPreviewWidths[index];
+    }
+
+    int getPreviewHeight(int index) {
+        return mPreviewHeights[index];
+    }
+
+    int getDefaultPreviewWidth() {
+        return mDefaultPreviewWidth;
+    }
+
+    int getDefaultPreviewHeight() {
+        return mDefaultPreviewHeight;
+    }
+
+    /**
+     * 以下列表為null表示相機不支持
+     */
+    List<String> getFocusModes() {
+        return mFocusModes;
+    }
+
+    List<String> getFlashModes() {
+        return mFlashModes;
+    }
+
+    List<String> getColorEffects() {
+        return mColorEffects;
+    }
+
+    boolean isZoomSupported() {
+        return mZoomSupported;
+    }
+
+    int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    /**
+     * 各縮放級別的倍率，乘以100
+     */
+    int[] getZoomRatios() {
+        return mZoomRatios;
+    }
+
+    boolean hasTorch() {
+        return mFlashModes != null && (mFlashModes.contains(Camera.Parameters.FLASH_MODE_TORCH) || mFlashModes.contains(Camera.Parameters.FLASH_MODE_ON));
+    }
+}
@@ -0,0 +1,80 @@
+package cn.hugo.android.scanner.camera;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures what a decode costs per pixel on this device, for
+ * {@link PreviewSizeSelector}. A frame of noise holds no barcode, so every
+ * enabled reader searches all of it: the timing is the cost of a frame the
+ * decoder has to give up on, which is what most preview frames are. <br/>
+ * <br/>
+ *
+ * 解碼耗時校準：計時幾次找不到條碼的解碼，得出每像素的耗時
+ */
+final class DecodeCostCalibrator {
+    private static final String TAG = DecodeCostCalibrator.class.getSimpleName();
+
+    private static final int FRAME_SIZE = 400;
+
+    /**
+     * 計時的次數，取中位數；之前先預熱一次
+     */
+    private static final int RUNS = 5;
+
+    private DecodeCostCalibrator() {
+    }
+
+    /**
+     * Blocks for a few decodes, typically a few hundred milliseconds on a
+     * phone; call it once and keep the result.
+     *
+     * @param formats The enabled formats; null or empty means every format.
+     * @return The median decode time per pixel, in nanoseconds.
+     */
+    static float measureNanosPerPixel(Collection<BarcodeFormat> formats) {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        if (formats != null && !formats.isEmpty()) {
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        }
+        MultiFormatReader reader = new MultiFormatReader();
+        reader.setHints(hints);
+
+        byte[] frame = new byte[FRAME_SIZE * FRAME_SIZE];
+        new Random(FRAME_SIZE).nextBytes(frame);
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(frame, FRAME_SIZE, FRAME_SIZE, 0, 0, FRAME_SIZE, FRAME_SIZE, false);
+
+        decode(reader, new BinaryBitmap(new HybridBinarizer(source)));
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            // 每次重新二值化，與預覽幀的處理一致
+            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+            long start = System.nanoTime();
+            decode(reader, bitmap);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return (float) times[RUNS / 2] / (FRAME_SIZE * FRAME_SIZE);
+    }
+
+    private static void decode(MultiFormatReader reader, BinaryBitmap bitmap) {
+        try {
+            reader.decodeWithState(bitmap);
+        } catch (ReaderException re) {
+            // expected
+        } finally {
+            reader.reset();
+        }
+    }
+}
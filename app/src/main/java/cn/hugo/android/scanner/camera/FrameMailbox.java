@@ -0,0 +1,101 @@
+package cn.hugo.android.scanner.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single-slot, lock-free mailbox between the camera and the decoder. The
+ * camera thread always overwrites the slot with the newest frame, so a
+ * decoder picking a frame up always gets the freshest one. A frame which is
+ * overwritten before anybody took it is dropped and counted, never queued.
+ * <br/>
+ * <br/>
+ *
+ * 相機與解碼線程之間的單槽信箱：新幀總是覆蓋舊幀，解碼線程取到的永遠是最新的一幀，
+ * 被覆蓋的幀直接丟棄並計數
+ */
+public final class FrameMailbox {
+    private static final String TAG = FrameMailbox.class.getSimpleName();
+
+    /**
+     * Notified on the camera thread every time a frame was published.
+     */
+    public interface Listener {
+        void onFrameAvailable(FrameMailbox mailbox);
+    }
+
+    private final AtomicReference<PreviewFrame> mSlot = new AtomicReference<PreviewFrame>();
+    private final AtomicLong mPublishedCount = new AtomicLong();
+    private final AtomicLong mTakenCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private volatile Listener mListener;
+
+    public void setListener(Listener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Puts a frame into the slot.
+     *
+     * @return The frame which was still waiting in the slot and has now been
+     * dropped, or null. The caller owns it again.
+     */
+    PreviewFrame publish(PreviewFrame frame) {
+        PreviewFrame evicted = mSlot.getAndSet(frame);
+        mPublishedCount.incrementAndGet();
+        if (evicted != null) {
+            mDroppedCount.incrementAndGet();
+        }
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onFrameAvailable(this);
+        }
+        return evicted;
+    }
+
+    /**
+     * Takes the newest frame out of the slot. The caller owns the frame and
+     * has to hand it back with {@link PreviewFrame#release()}.
+     *
+     * @return The frame, or null if another reader was faster.
+     */
+    public PreviewFrame take() {
+        PreviewFrame frame = mSlot.getAndSet(null);
+        if (frame != null) {
+            mTakenCount.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Empties the slot without counting the frame as taken or dropped.
+     */
+    PreviewFrame clear() {
+        return mSlot.getAndSet(null);
+    }
+
+    public boolean hasFrame() {
+        return mSlot.get() != null;
+    }
+
+    /**
+     * 相機送進信箱的幀數
+     */
+    public long getPublishedCount() {
+        return mPublishedCount.get();
+    }
+
+    /**
+     * 解碼線程取走的幀數
+     */
+    public long getTakenCount() {
+        return mTakenCount.get();
+    }
+
+    /**
+     * 沒來得及解碼就被新幀覆蓋的幀數，持續增長說明解碼跟不上相機
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+}
@@ -0,0 +1,234 @@
+package cn.hugo.android.scanner.camera;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CameraBackend} on the {@link Camera} API. Preview frames are NV21
+ * buffers from a {@link PreviewBufferRing}; the callbacks run on the thread
+ * which opened the camera. <br/>
+ * <br/>
+ *
+ * 基於android.hardware.Camera的相機後端
+ */
+final class LegacyCameraBackend implements CameraBackend {
+    private static final String TAG = LegacyCameraBackend.class.getSimpleName();
+
+    private final Context mContext;
+    private final CameraConfigurationManager mCameraConfigurationManager;
+    private final PreviewCallback mPreviewCallback;
+    private Camera mCamera;
+
+    /**
+     * 相機能力描述，第一次打開相機時讀取（優先讀快取檔）
+     */
+    private CameraProfile mProfile;
+    private volatile AutoFocusManager mAutoFocusManager;
+    private boolean mPreviewing;
+
+    /**
+     * 對焦結束的次數，由AutoFocusManager累加
+     */
+    private final AtomicInteger mFocusCount = new AtomicInteger();
+
+    /**
+     * 相機循環填充的預覽緩衝區，每次startPreview時按預覽尺寸分配
+     */
+    private PreviewBufferRing mPreviewBufferRing;
+
+    LegacyCameraBackend(Context context, CameraConfigurationManager configurationManager, PreviewCallback previewCallback) {
+        this.mContext = context;
+        this.mCameraConfigurationManager = configurationManager;
+        this.mPreviewCallback = previewCallback;
+    }
+
+    @Override
+    public CameraProfile open() throws IOException {
+        if (mCamera == null) {
+            // 獲取手機背面的攝像頭
+            int cameraId = OpenCameraInterface.findCameraId();
+            Camera camera = cameraId < 0 ? null : OpenCameraInterface.open(cameraId);
+            if (camera == null) {
+                throw new IOException();
+            }
+            mCamera = camera;
+            if (mProfile == null || mProfile.getCameraId() != cameraId) {
+                mProfile = CameraProfile.load(mContext, cameraId, camera);
+            }
+        }
+        return mProfile;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mCamera != null;
+    }
+
+    @Override
+    public void setPreviewDisplay(SurfaceHolder holder) throws IOException {
+        mCamera.setPreviewDisplay(holder);
+    }
+
+    @Override
+    public void setPreviewTexture(SurfaceTexture surfaceTexture) throws IOException {
+        mCamera.setPreviewTexture(surfaceTexture);
+    }
+
+    @Override
+    public void configure(CameraConfigurationManager configurationManager) {
+        Camera camera = mCamera;
+        Camera.Parameters parameters = camera.getParameters();
+        String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these temporarily
+        try {
+            configurationManager.setDesiredCameraParameters(camera, parameters, false);
+        } catch (RuntimeException re) {
+            // Driver failed
+            Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
+            Log.i(TAG, "Resetting to saved mCamera params: " + parametersFlattened);
+            // Reset:
+            if (parametersFlattened != null) {
+                parameters = camera.getParameters();
+                parameters.unflatten(parametersFlattened);
+                try {
+                    camera.setParameters(parameters);
+                    configurationManager.setDesiredCameraParameters(camera, parameters, true);
+                } catch (RuntimeException re2) {
+                    // Well, darn. Give up
+                    Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void startPreview(int bufferCount) {
+        Camera theCamera = mCamera;
+        if (theCamera != null && !mPreviewing) {
+            // 以固定的緩衝區持續接收預覽幀，避免每一幀都分配新的byte[]
+            PreviewBufferRing bufferRing = new PreviewBufferRing(mCameraConfigurationManager.getCameraResolution(), mCameraConfigurationManager.getPreviewFormat(), bufferCount);
+            mPreviewCallback.setBufferRing(bufferRing);
+            theCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
+            bufferRing.attach(theCamera);
+            mPreviewBufferRing = bufferRing;
+            theCamera.startPreview();
+            mPreviewing = true;
+            mAutoFocusManager = new AutoFocusManager(mContext, mCamera, mFocusCount);
+        }
+    }
+
+    @Override
+    public void stopPreview() {
+        if (mAutoFocusManager != null) {
+            mAutoFocusManager.stop();
+            mAutoFocusManager = null;
+        }
+        if (mCamera != null && mPreviewing) {
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mCamera.stopPreview();
+            mPreviewing = false;
+        }
+        PreviewBufferRing bufferRing = mPreviewBufferRing;
+        if (bufferRing != null) {
+            // 之後歸還的幀不再交給相機
+            bufferRing.detach();
+            mPreviewBufferRing = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mCamera != null) {
+            mCamera.release();
+            mCamera = null;
+        }
+    }
+
+    @Override
+    public void requestFocus() {
+        AutoFocusManager autoFocusManager = mAutoFocusManager;
+        if (autoFocusManager != null) {
+            autoFocusManager.requestFocus();
+        }
+    }
+
+    @Override
+    public void onDecodeSucceeded() {
+        AutoFocusManager autoFocusManager = mAutoFocusManager;
+        if (autoFocusManager != null) {
+            autoFocusManager.onDecodeSucceeded();
+        }
+    }
+
+    /**
+     * The display orientation set on the camera.
+     */
+    @Override
+    public int getPreviewRotation() {
+        return mCameraConfigurationManager.getDisplayOrientation();
+    }
+
+    @Override
+    public int getFocusCount() {
+        return mFocusCount.get();
+    }
+
+    @Override
+    public boolean getTorchState() {
+        return mCameraConfigurationManager.getTorchState(mCamera);
+    }
+
+    @Override
+    public void setTorch(boolean newSetting) {
+        if (mCamera != null && newSetting != getTorchState()) {
+            if (mAutoFocusManager != null) {
+                mAutoFocusManager.stop();
+            }
+            mCameraConfigurationManager.setTorch(mCamera, newSetting);
+            if (mAutoFocusManager != null) {
+                mAutoFocusManager.start();
+            }
+        }
+    }
+
+    @Override
+    public void zoomIn() {
+        if (mCamera != null && mProfile.isZoomSupported()) {
+            Camera.Parameters parameters = mCamera.getParameters();
+            int zoom = parameters.getZoom();
+            if (zoom >= mProfile.getMaxZoom()) {
+                return;
+            }
+            parameters.setZoom(zoom + 1);
+            mCamera.setParameters(parameters);
+        }
+    }
+
+    @Override
+    public void zoomOut() {
+        if (mCamera != null && mProfile.isZoomSupported()) {
+            Camera.Parameters parameters = mCamera.getParameters();
+            int zoom = parameters.getZoom();
+            if (zoom <= 0) {
+                return;
+            }
+            parameters.setZoom(zoom - 1);
+            mCamera.setParameters(parameters);
+        }
+    }
+
+    @Override
+    public void setZoom(int zoom) {
+        if (mCamera != null && mProfile.isZoomSupported()
+                && zoom <= mProfile.getMaxZoom() && zoom >= 0) {
+            Camera.Parameters parameters = mCamera.getParameters();
+            parameters.setZoom(zoom);
+            mCamera.setParameters(parameters);
+        }
+    }
+}
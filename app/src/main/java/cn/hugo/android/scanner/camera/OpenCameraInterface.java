@@ -29,10 +29,18 @@ public class OpenCameraInterface {
      * or opens camera 0.
      */
     public static Camera open() {
+        int cameraId = findCameraId();
+        return cameraId < 0 ? null : open(cameraId);
+    }
+
+    /**
+     * 背面攝像頭的id，沒有則為0，沒有攝像頭時為-1
+     */
+    public static int findCameraId() {
         int numCameras = Camera.getNumberOfCameras();
         if (numCameras == 0) {
             Log.w(TAG, "No cameras!");
-            return null;
+            return -1;
         }
 
         int index = 0;
@@ -46,15 +54,16 @@ public class OpenCameraInterface {
             index++;
         }
 
-        Camera camera;
         if (index < numCameras) {
-            Log.i(TAG, "Opening camera #" + index);
-            camera = Camera.open(index);
-        } else {
-            Log.i(TAG, "No camera facing back; returning camera #0");
-            camera = Camera.open(0);
+            return index;
         }
-        return camera;
+        Log.i(TAG, "No camera facing back; returning camera #0");
+        return 0;
+    }
+
+    public static Camera open(int cameraId) {
+        Log.i(TAG, "Opening camera #" + cameraId);
+        return Camera.open(cameraId);
     }
 }
 
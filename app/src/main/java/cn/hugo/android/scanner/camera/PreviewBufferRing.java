@@ -0,0 +1,86 @@
+package cn.hugo.android.scanner.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.hardware.Camera;
+import android.util.Log;
+
+/**
+ * A fixed set of preview buffers which are handed to the camera with
+ * {@link Camera#addCallbackBuffer(byte[])}. The camera fills one of them for
+ * every frame, so no byte[] is allocated per frame; whoever consumes a frame
+ * has to give the buffer back by releasing its {@link PreviewFrame}. <br/>
+ * <br/>
+ *
+ * 預覽緩衝區環：預先分配固定數量的緩衝區供相機循環使用，使用者處理完一幀後必須歸還緩衝區
+ */
+final class PreviewBufferRing implements PreviewFrame.Owner {
+    private static final String TAG = PreviewBufferRing.class.getSimpleName();
+
+    private final byte[][] mBuffers;
+
+    /**
+     * 每個緩衝區對應的幀，預先建立，送幀時不需要分配
+     */
+    private final PreviewFrame[] mFrames;
+    private Camera mCamera;
+
+    PreviewBufferRing(Point cameraResolution, int previewFormat, int count) {
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(previewFormat);
+        if (bitsPerPixel <= 0) {
+            // 未知格式時按NV21計算
+            bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
+        }
+        int bufferSize = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+        mBuffers = new byte[count][];
+        mFrames = new PreviewFrame[count];
+        for (int i = 0; i < count; i++) {
+            mBuffers[i] = new byte[bufferSize];
+            mFrames[i] = new PreviewFrame(mBuffers[i], cameraResolution.x, cameraResolution.y, this);
+        }
+        Log.d(TAG, "Allocated " + count + " preview buffers of " + bufferSize + " bytes");
+    }
+
+    /**
+     * Queues every buffer on the camera. Must be called after the preview size
+     * has been set.
+     */
+    synchronized void attach(Camera camera) {
+        mCamera = camera;
+        for (byte[] buffer : mBuffers) {
+            camera.addCallbackBuffer(buffer);
+        }
+    }
+
+    /**
+     * After this, released buffers are no longer given back to the camera.
+     */
+    synchronized void detach() {
+        mCamera = null;
+    }
+
+    /**
+     * @return The frame wrapping one of this ring's buffers, or null if the
+     * buffer is not one of them.
+     */
+    PreviewFrame frameFor(byte[] buffer) {
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (mBuffers[i] == buffer) {
+                return mFrames[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a buffer to the camera so it can be filled again. Frames of
+     * another ring, e.g. from before the preview was restarted, are dropped.
+     */
+    @Override
+    public synchronized void release(PreviewFrame frame) {
+        if (mCamera == null || frame == null || frameFor(frame.getData()) != frame) {
+            return;
+        }
+        mCamera.addCallbackBuffer(frame.getData());
+    }
+}
@@ -16,44 +16,55 @@
 
 package cn.hugo.android.scanner.camera;
 
-import android.graphics.Point;
 import android.hardware.Camera;
-import android.os.Handler;
-import android.os.Message;
-import android.util.Log;
 
 /**
- * 該類的作用是在預覽介面載入好後向ui線程發消息
+ * 該類的作用是把相機送來的每一幀放進{@link FrameMailbox}。
+ * 相機持續送幀，沒有信箱等待的幀直接還給相機。Camera1的幀經由onPreviewFrame，
+ * Camera2的幀由後端直接調用{@link #onFrame(PreviewFrame)}
  */
 public class PreviewCallback implements Camera.PreviewCallback {
     private static final String TAG = PreviewCallback.class.getSimpleName();
-    private final CameraConfigurationManager mCameraConfigurationManager;
-    private Handler previewHandler;
-    private int previewMessage;
+    private volatile PreviewBufferRing mBufferRing;
+    private volatile FrameMailbox mMailbox;
 
-    public PreviewCallback(CameraConfigurationManager configurationManager) {
-        this.mCameraConfigurationManager = configurationManager;
+    /**
+     * 綁定信箱後每一幀都會送進信箱，被覆蓋的舊幀歸還給相機
+     */
+    void setMailbox(FrameMailbox mailbox) {
+        this.mMailbox = mailbox;
     }
 
     /**
-     * 綁定handler，用於發消息到ui線程
+     * 綁定Camera1的預覽緩衝區環，用於找到緩衝區對應的幀
      */
-    public void setHandler(Handler previewHandler, int previewMessage) {
-        this.previewHandler = previewHandler;
-        this.previewMessage = previewMessage;
+    void setBufferRing(PreviewBufferRing bufferRing) {
+        this.mBufferRing = bufferRing;
     }
 
-	@Override
+    @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-        Point cameraResolution = mCameraConfigurationManager.getCameraResolution();
-        Handler thePreviewHandler = previewHandler;
-        if (cameraResolution != null && thePreviewHandler != null) {
-            Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x, cameraResolution.y, data);
-            message.sendToTarget();
-            previewHandler = null;
-        } else {
-            Log.d(TAG, "Got preview callback, but no handler or resolution available");
+        PreviewBufferRing bufferRing = mBufferRing;
+        PreviewFrame frame = data == null || bufferRing == null ? null : bufferRing.frameFor(data);
+        if (frame != null) {
+            onFrame(frame);
         }
     }
-}
 
+    /**
+     * Passes a frame on to the mailbox, or gives it straight back to the
+     * camera.
+     */
+    void onFrame(PreviewFrame frame) {
+        FrameMailbox mailbox = mMailbox;
+        PreviewFrame unused = frame;
+        if (mailbox != null) {
+            // 最新的幀覆蓋信箱中還沒被取走的幀
+            unused = mailbox.publish(frame);
+        }
+        if (unused != null) {
+            // Nobody asked for this frame, let the camera fill it again.
+            unused.release();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cn.hugo.android.scanner.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One preview frame, as handed from the camera backend to the decoder. With
+ * the Camera1 backend it is an NV21 preview buffer; with the Camera2 backend
+ * it is the Y plane of a YUV_420_888 image, read in place with its row and
+ * pixel stride. Either way the frames are made once per stream and reused,
+ * so none is allocated per preview frame. Whoever takes a frame has to {@link #release()} it once the
+ * data is no longer read, so that the camera can fill it again. <br/>
+ * <br/>
+ *
+ * 一幀預覽資料：Camera1為NV21緩衝區，Camera2為YUV_420_888圖像的Y平面，用完後必須release
+ */
+public final class PreviewFrame {
+    private static final String TAG = PreviewFrame.class.getSimpleName();
+
+    /**
+     * Takes a released frame back, on any thread.
+     */
+    interface Owner {
+        void release(PreviewFrame frame);
+    }
+
+    private final Owner mOwner;
+    private final byte[] mData;
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * Camera2的幀每次重新指向新的圖像，只在幀未被持有時由擁有者修改
+     */
+    private ByteBuffer mPlane;
+    private int mRowStride;
+    private int mPixelStride;
+    private Object mTag;
+
+    /**
+     * An NV21 frame, luminance plane first.
+     */
+    PreviewFrame(byte[] data, int width, int height, Owner owner) {
+        this.mOwner = owner;
+        this.mData = data;
+        this.mPlane = null;
+        this.mRowStride = width;
+        this.mPixelStride = 1;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mTag = null;
+    }
+
+    /**
+     * A luminance plane frame, pointed at its plane with
+     * {@link #setPlane(ByteBuffer, int, int, Object)} before it is handed out.
+     */
+    PreviewFrame(int width, int height, Owner owner) {
+        this.mOwner = owner;
+        this.mData = null;
+        this.mWidth = width;
+        this.mHeight = height;
+    }
+
+    /**
+     * Points a luminance plane frame at the next image. Only the owner calls
+     * this, while nobody else holds the frame.
+     *
+     * @param tag Whatever the owner needs to release the frame, e.g. the
+     *            Image the plane belongs to.
+     */
+    void setPlane(ByteBuffer plane, int rowStride, int pixelStride, Object tag) {
+        this.mPlane = plane;
+        this.mRowStride = rowStride;
+        this.mPixelStride = pixelStride;
+        this.mTag = tag;
+    }
+
+    /**
+     * The NV21 data, or null if this frame is a plane.
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * The luminance plane, or null if this frame is NV21 data. Don't move
+     * its position or limit; read it with absolute gets or a duplicate.
+     */
+    public ByteBuffer getPlane() {
+        return mPlane;
+    }
+
+    /**
+     * 相鄰兩行的距離（位元組）
+     */
+    public int getRowStride() {
+        return mRowStride;
+    }
+
+    /**
+     * 同一行相鄰兩個像素的距離（位元組）
+     */
+    public int getPixelStride() {
+        return mPixelStride;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    Object getTag() {
+        return mTag;
+    }
+
+    /**
+     * Gives the frame back to the camera. Call it once, after the last read.
+     */
+    public void release() {
+        mOwner.release(this);
+    }
+}
@@ -0,0 +1,221 @@
+package cn.hugo.android.scanner.camera;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Picks a preview size by what the decoder needs rather than by the screen.
+ * Only the framing rect is decoded, so the decode cost of a size is about
+ * the framing rect's pixel count times a per-pixel cost. A size is good
+ * enough when the framing rect gives each module of the widest symbol of the
+ * enabled formats the minimum number of pixels; the smallest such size is
+ * taken, and then grown towards a comfortable pixel density as long as the
+ * estimated decode time stays within the target. <br/>
+ * <br/>
+ *
+ * 按解碼需要選擇預覽尺寸：取能讓掃描框內每個模組有足夠像素的最小尺寸，在解碼時間預算內再適當放大
+ */
+final class PreviewSizeSelector {
+    private static final String TAG = PreviewSizeSelector.class.getSimpleName();
+
+    /**
+     * 未校準時每像素的解碼耗時，約為中端手機上找不到條碼時的耗時
+     */
+    static final float DEFAULT_NANOS_PER_PIXEL = 150.0f;
+
+    /**
+     * 每幀解碼的目標耗時
+     */
+    static final long TARGET_DECODE_NANOS = 50L * 1000L * 1000L;
+
+    /**
+     * 二維碼每個模組至少需要的像素數，採樣網格低於此值容易錯位
+     */
+    private static final float MIN_PIXELS_PER_MODULE_2D = 2.0f;
+
+    /**
+     * 一維碼最窄的條至少需要的像素數
+     */
+    private static final float MIN_PIXELS_PER_MODULE_1D = 1.5f;
+
+    /**
+     * 預算允許時希望達到的像素密度（相對最低要求的倍數），離得稍遠或稍模糊時仍可識別
+     */
+    private static final float PREFERRED_DENSITY = 1.5f;
+
+    /**
+     * 條碼通常只佔掃描框邊長的這個比例
+     */
+    private static final float SYMBOL_FILL = 0.7f;
+
+    private final float mRectFraction;
+    private final float mNanosPerPixel;
+    private final long mTargetNanos;
+    private final int mRequiredPixels;
+    private final int mPreferredPixels;
+
+    /**
+     * @param formats       The enabled formats; null or empty means every
+     *                      format.
+     * @param rectFraction  掃描框邊長佔預覽短邊的比例
+     * @param nanosPerPixel 每像素的解碼耗時
+     * @param targetNanos   每幀解碼的目標耗時
+     */
+    PreviewSizeSelector(Collection<BarcodeFormat> formats, float rectFraction, float nanosPerPixel, long targetNanos) {
+        if (rectFraction <= 0.0f || rectFraction > 1.0f || nanosPerPixel <= 0.0f || targetNanos <= 0L) {
+            throw new IllegalArgumentException("Bad selector: rect " + rectFraction + ", " + nanosPerPixel + " ns/pixel, target " + targetNanos + " ns");
+        }
+        this.mRectFraction = rectFraction;
+        this.mNanosPerPixel = nanosPerPixel;
+        this.mTargetNanos = targetNanos;
+        this.mRequiredPixels = requiredRectPixels(formats);
+        this.mPreferredPixels = (int) Math.ceil(mRequiredPixels * PREFERRED_DENSITY);
+    }
+
+    /**
+     * 掃描框邊長至少需要的預覽像素數
+     */
+    int getRequiredRectPixels() {
+        return mRequiredPixels;
+    }
+
+    int getPreferredRectPixels() {
+        return mPreferredPixels;
+    }
+
+    /**
+     * 掃描框在此預覽尺寸下的邊長
+     */
+    int rectPixels(int width, int height) {
+        return (int) (Math.min(width, height) * mRectFraction);
+    }
+
+    long estimateDecodeNanos(int width, int height) {
+        long side = rectPixels(width, height);
+        return (long) (side * side * mNanosPerPixel);
+    }
+
+    /**
+     * @return The index of the size to use, or -1 if there are none. Falls
+     * back to the largest size if none gives enough pixels.
+     */
+    int select(int[] widths, int[] heights) {
+        if (widths.length != heights.length) {
+            throw new IllegalArgumentException("Got " + widths.length + " widths but " + heights.length + " heights");
+        }
+        if (widths.length == 0) {
+            return -1;
+        }
+        Integer[] order = ascendingByPixels(widths, heights);
+        int chosen = -1;
+        for (Integer index : order) {
+            int side = rectPixels(widths[index], heights[index]);
+            if (side < mRequiredPixels) {
+                continue;
+            }
+            if (chosen >= 0 && estimateDecodeNanos(widths[index], heights[index]) > mTargetNanos) {
+                break;
+            }
+            chosen = index;
+            if (side >= mPreferredPixels) {
+                break;
+            }
+        }
+        return chosen >= 0 ? chosen : order[order.length - 1];
+    }
+
+    private static Integer[] ascendingByPixels(final int[] widths, final int[] heights) {
+        Integer[] order = new Integer[widths.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long aPixels = (long) widths[a] * heights[a];
+                long bPixels = (long) widths[b] * heights[b];
+                return aPixels < bPixels ? -1 : (aPixels == bPixels ? 0 : 1);
+            }
+        });
+        return order;
+    }
+
+    /**
+     * 所有啟用格式中，最寬的條碼在掃描框內需要的邊長
+     */
+    static int requiredRectPixels(Collection<BarcodeFormat> formats) {
+        boolean all = formats == null || formats.isEmpty();
+        float required = 0.0f;
+        for (BarcodeFormat format : BarcodeFormat.values()) {
+            if (all || formats.contains(format)) {
+                float modules = symbolModules(format);
+                if (modules > 0.0f) {
+                    float perModule = isOneD(format) ? MIN_PIXELS_PER_MODULE_1D : MIN_PIXELS_PER_MODULE_2D;
+                    required = Math.max(required, modules * perModule / SYMBOL_FILL);
+                }
+            }
+        }
+        return (int) Math.ceil(required);
+    }
+
+    /**
+     * Typical width in modules of the largest symbol expected for a format,
+     * quiet zone included, or 0 if the format is not decoded from preview.
+     */
+    private static float symbolModules(BarcodeFormat format) {
+        switch (format) {
+            case QR_CODE:
+                // 版本10加靜區
+                return 57 + 8;
+            case DATA_MATRIX:
+                return 48 + 2;
+            case AZTEC:
+                return 45;
+            case PDF_417:
+                // 6列數據
+                return 17 * 10 + 1 + 4;
+            case MAXICODE:
+                return 33;
+            case EAN_13:
+            case UPC_A:
+                return 95 + 18;
+            case EAN_8:
+                return 67 + 14;
+            case UPC_E:
+                return 51 + 18;
+            case RSS_14:
+                return 96 + 2;
+            case RSS_EXPANDED:
+                return 200;
+            case CODE_128:
+                // 約20個字元
+                return 11 * 20 + 35 + 20;
+            case CODE_39:
+                return 16 * 15 + 20;
+            case CODE_93:
+                return 9 * 20 + 37 + 20;
+            case ITF:
+                return 9 * 10 + 9 + 20;
+            case CODABAR:
+                return 12 * 15 + 20;
+            default:
+                return 0.0f;
+        }
+    }
+
+    private static boolean isOneD(BarcodeFormat format) {
+        switch (format) {
+            case QR_CODE:
+            case DATA_MATRIX:
+            case AZTEC:
+            case PDF_417:
+            case MAXICODE:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
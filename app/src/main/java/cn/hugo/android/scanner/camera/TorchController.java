@@ -0,0 +1,104 @@
+package cn.hugo.android.scanner.camera;
+
+/**
+ * Decides from ambient light readings whether the torch should be on. The
+ * lux values are smoothed with an exponential moving average in which each
+ * reading weighs by how long it was held: a new reading only counts once
+ * time has passed, either when the next one comes or on
+ * {@link #onTick(long)}. The light sensor only reports changes, so the caller
+ * calls onTick every {@link #TICK_MS} until the average has settled; a level
+ * held without further events still ends up counting fully, while a short
+ * dip (flicker, a hand passing over the sensor) counts for little. The torch
+ * goes on below {@link #TOO_DARK_LUX} and only goes off again above
+ * {@link #BRIGHT_ENOUGH_LUX}. <br/>
+ * <br/>
+ *
+ * 環境光的平滑與遲滯判斷：每個讀數按其維持的時間計入指數移動平均，讀數不變時靠定時更新繼續收斂；低於45 lux開燈，高於450 lux才關燈
+ */
+final class TorchController {
+    private static final String TAG = TorchController.class.getSimpleName();
+
+    static final float TOO_DARK_LUX = 45.0f;
+    static final float BRIGHT_ENOUGH_LUX = 450.0f;
+
+    /**
+     * 平滑的時間常數：讀數維持這麼久，其權重約為63%
+     */
+    static final long SMOOTHING_MS = 1000L;
+
+    /**
+     * 平均值未收斂時定時更新的間隔
+     */
+    static final long TICK_MS = 250L;
+
+    /**
+     * 平均值與目前讀數相差不到此值即視為已收斂
+     */
+    private static final float SETTLED_LUX = 1.0f;
+
+    private boolean mTorchOn;
+    private float mSmoothedLux = Float.NaN;
+    private float mLastLux;
+    private long mLastUpdateTime;
+
+    TorchController(boolean torchOn) {
+        this.mTorchOn = torchOn;
+    }
+
+    /**
+     * Takes a reading.
+     *
+     * @return Whether the torch should be on now.
+     */
+    boolean onLux(float lux, long nowMs) {
+        if (Float.isNaN(mSmoothedLux)) {
+            mSmoothedLux = lux;
+            mLastUpdateTime = nowMs;
+        } else {
+            // 上一個讀數維持到現在，按維持的時間計入；新讀數由之後的定時更新計入
+            moveToward(mLastLux, nowMs);
+        }
+        mLastLux = lux;
+        return decide();
+    }
+
+    /**
+     * Counts the latest reading as held until now.
+     *
+     * @return Whether the torch should be on now.
+     */
+    boolean onTick(long nowMs) {
+        if (!Float.isNaN(mSmoothedLux)) {
+            moveToward(mLastLux, nowMs);
+        }
+        return decide();
+    }
+
+    /**
+     * Whether the average has reached the latest reading, so that further
+     * ticks would change nothing.
+     */
+    boolean isSettled() {
+        return Float.isNaN(mSmoothedLux) || Math.abs(mSmoothedLux - mLastLux) < SETTLED_LUX;
+    }
+
+    float getSmoothedLux() {
+        return mSmoothedLux;
+    }
+
+    private void moveToward(float lux, long nowMs) {
+        long elapsed = Math.max(0L, nowMs - mLastUpdateTime);
+        float weight = (float) (1.0 - Math.exp(-(double) elapsed / SMOOTHING_MS));
+        mSmoothedLux += weight * (lux - mSmoothedLux);
+        mLastUpdateTime = nowMs;
+    }
+
+    private boolean decide() {
+        if (!mTorchOn && mSmoothedLux <= TOO_DARK_LUX) {
+            mTorchOn = true;
+        } else if (mTorchOn && mSmoothedLux >= BRIGHT_ENOUGH_LUX) {
+            mTorchOn = false;
+        }
+        return mTorchOn;
+    }
+}
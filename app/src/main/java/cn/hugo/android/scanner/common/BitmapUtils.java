@@ -1,8 +1,14 @@
 package cn.hugo.android.scanner.common;
 
+import android.content.ContentResolver;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 public class BitmapUtils {
     private static final String TAG = BitmapUtils.class.getSimpleName();
@@ -46,4 +52,41 @@ public class BitmapUtils {
         options.inJustDecodeBounds = false;
         return BitmapFactory.decodeFile(path, options);
     }
+
+    /**
+     * Like {@link #getCompressedBitmap(String)}, for content such as a gallery
+     * pick.
+     *
+     * @return null if the uri cannot be opened or decoded.
+     */
+    public static Bitmap getCompressedBitmap(ContentResolver resolver, Uri uri) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(resolver, uri, options);
+        if (options.outWidth <= 0) {
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options, 480, 800);
+        options.inJustDecodeBounds = false;
+        return decodeStream(resolver, uri, options);
+    }
+
+    private static Bitmap decodeStream(ContentResolver resolver, Uri uri, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = resolver.openInputStream(uri);
+            return in == null ? null : BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + uri, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
 }
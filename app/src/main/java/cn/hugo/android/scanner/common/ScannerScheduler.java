@@ -0,0 +1,85 @@
+package cn.hugo.android.scanner.common;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * One background thread for every timer-style job of the scanner: the
+ * inactivity timeout, periodic focus runs and the like. Jobs are delayed
+ * messages on the thread's looper, so waiting costs no thread and cancelling
+ * removes the message at once; the thread only wakes up when a job is due.
+ * Jobs must be short and must not block. <br/>
+ * <br/>
+ *
+ * 掃描器共用的排程線程：延遲任務以訊息的形式排隊，取消時立即移除，等待期間不佔用線程
+ */
+public final class ScannerScheduler {
+    private static final String TAG = ScannerScheduler.class.getSimpleName();
+
+    private static ScannerScheduler sInstance;
+
+    private final Handler mHandler;
+
+    private ScannerScheduler() {
+        HandlerThread thread = new HandlerThread("ScannerScheduler", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * The scheduler, started on first use and kept for the life of the
+     * process.
+     */
+    public static synchronized ScannerScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new ScannerScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Runs {@code job} on the scheduler thread after {@code delayMs}.
+     *
+     * @return A handle to cancel the job before it runs.
+     */
+    public Task schedule(Runnable job, long delayMs) {
+        Task task = new Task(mHandler, job);
+        mHandler.postDelayed(task, Math.max(0L, delayMs));
+        return task;
+    }
+
+    /**
+     * A scheduled job.
+     */
+    public static final class Task implements Runnable {
+        private final Handler mHandler;
+        private final Runnable mJob;
+        private volatile boolean mCancelled;
+
+        Task(Handler handler, Runnable job) {
+            this.mHandler = handler;
+            this.mJob = job;
+        }
+
+        /**
+         * Removes the job if it has not started yet. A job already running
+         * is not interrupted.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mHandler.removeCallbacks(this);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public void run() {
+            if (!mCancelled) {
+                mJob.run();
+            }
+        }
+    }
+}
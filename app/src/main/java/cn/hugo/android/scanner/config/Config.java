@@ -50,4 +50,11 @@ public final class Config {
     public static final String KEY_DISABLE_METERING = "preferences_disable_metering";
     public static final String KEY_DISABLE_BARCODE_SCENE_MODE = "preferences_disable_barcode_scene_mode";
     public static final String KEY_AUTO_OPEN_WEB = "preferences_auto_open_web";
+
+    public static final String KEY_CALIBRATE_DECODE_COST = "preferences_calibrate_decode_cost";
+    public static final String KEY_DECODE_NANOS_PER_PIXEL = "preferences_decode_nanos_per_pixel";
+    public static final String KEY_QUALITY_GATE = "preferences_quality_gate";
+    public static final String KEY_SKIP_UNCHANGED_FRAMES = "preferences_skip_unchanged_frames";
+    public static final String KEY_PINNED_FORMATS = "preferences_pinned_formats";
+    public static final String KEY_RARE_FORMAT_INTERVAL = "preferences_rare_format_interval";
 }
@@ -0,0 +1,241 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.Result;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.hugo.android.scanner.common.BitmapUtils;
+
+/**
+ * Decodes many gallery images, files or content uris, on a fixed number of
+ * background threads. Every thread has its own {@link BitmapDecoder}, and so
+ * its own MultiFormatReader, and holds at most one bitmap at a time. Results
+ * are delivered on the main thread in the order the images finish, together
+ * with progress; a {@link Batch} can be cancelled at any time. <br/>
+ * <br/>
+ *
+ * 批量解碼相冊圖片：固定數量的後臺線程各自持有一個BitmapDecoder，結果按完成順序在主線程回調
+ */
+public final class BatchDecoder {
+    private static final String TAG = BatchDecoder.class.getSimpleName();
+
+    /**
+     * Called on the main thread.
+     *
+     * @param <T> The type of the sources, String paths or Uris.
+     */
+    public interface Callback<T> {
+        /**
+         * @param index  The position of the source in the submitted list.
+         * @param result null if no barcode was found or the image could not
+         *               be read.
+         */
+        void onDecoded(int index, T source, Result result);
+
+        void onProgress(int completed, int total);
+
+        /**
+         * Called once, after the last image or after cancellation.
+         */
+        void onFinished(int completed, int total, boolean cancelled);
+    }
+
+    /**
+     * A submitted list of images.
+     */
+    public static final class Batch {
+        private final int mTotal;
+        private final AtomicInteger mCompleted = new AtomicInteger();
+        private final AtomicBoolean mCancelled = new AtomicBoolean();
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+        private final List<Future<?>> mFutures;
+        private Runnable mFinisher;
+
+        private Batch(int total) {
+            this.mTotal = total;
+            this.mFutures = new ArrayList<Future<?>>(total);
+        }
+
+        /**
+         * Stops the batch: images not started yet are skipped, and no more
+         * results are delivered. Images being decoded run to completion, but
+         * their results are dropped. {@link Callback#onFinished} follows.
+         */
+        public void cancel() {
+            if (mCancelled.compareAndSet(false, true)) {
+                synchronized (mFutures) {
+                    for (Future<?> future : mFutures) {
+                        future.cancel(false);
+                    }
+                }
+                mFinisher.run();
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled.get();
+        }
+
+        public int getCompletedCount() {
+            return mCompleted.get();
+        }
+
+        public int getTotal() {
+            return mTotal;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 每個線程一個BitmapDecoder，MultiFormatReader不是線程安全的
+     */
+    private final ThreadLocal<BitmapDecoder> mDecoders;
+
+    public BatchDecoder(Context context) {
+        this(context, DecodeWorkerPool.defaultPoolSize());
+    }
+
+    /**
+     * @param threads 並行解碼的線程數
+     */
+    public BatchDecoder(Context context, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        final Context appContext = context.getApplicationContext();
+        mContentResolver = appContext.getContentResolver();
+        mDecoders = new ThreadLocal<BitmapDecoder>() {
+            @Override
+            protected BitmapDecoder initialValue() {
+                return new BitmapDecoder(appContext);
+            }
+        };
+        mExecutor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, TAG + "-" + mCount.getAndIncrement());
+            }
+        });
+        // 閒置時釋放線程及其讀取器
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public Batch decodeFiles(List<String> paths, Callback<String> callback) {
+        return submit(paths, callback);
+    }
+
+    public Batch decodeUris(List<Uri> uris, Callback<Uri> callback) {
+        return submit(uris, callback);
+    }
+
+    private <T> Batch submit(List<T> sources, final Callback<T> callback) {
+        final Batch batch = new Batch(sources.size());
+        batch.mFinisher = new Runnable() {
+            @Override
+            public void run() {
+                finish(batch, callback);
+            }
+        };
+        if (sources.isEmpty()) {
+            finish(batch, callback);
+            return batch;
+        }
+        synchronized (batch.mFutures) {
+            for (int i = 0; i < sources.size(); i++) {
+                final int index = i;
+                final T source = sources.get(i);
+                batch.mFutures.add(mExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (batch.isCancelled()) {
+                            return;
+                        }
+                        Result result = decode(source);
+                        deliver(batch, callback, index, source, result);
+                    }
+                }));
+            }
+        }
+        return batch;
+    }
+
+    private Result decode(Object source) {
+        Bitmap bitmap = source instanceof Uri
+                ? BitmapUtils.getCompressedBitmap(mContentResolver, (Uri) source)
+                : BitmapUtils.getCompressedBitmap((String) source);
+        if (bitmap == null) {
+            Log.w(TAG, "Cannot decode image " + source);
+            return null;
+        }
+        try {
+            return mDecoders.get().getRawResult(bitmap);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private <T> void deliver(final Batch batch, final Callback<T> callback, final int index, final T source, final Result result) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (batch.isCancelled()) {
+                    return;
+                }
+                int completed = batch.mCompleted.incrementAndGet();
+                callback.onDecoded(index, source, result);
+                callback.onProgress(completed, batch.mTotal);
+                if (completed == batch.mTotal) {
+                    finish(batch, callback);
+                }
+            }
+        });
+    }
+
+    private <T> void finish(final Batch batch, final Callback<T> callback) {
+        if (batch.mFinished.compareAndSet(false, true)) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFinished(batch.mCompleted.get(), batch.mTotal, batch.isCancelled());
+                }
+            });
+        }
+    }
+
+    /**
+     * Lets the images already submitted finish, then stops the threads.
+     * Cancel the batches first to stop sooner.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+}
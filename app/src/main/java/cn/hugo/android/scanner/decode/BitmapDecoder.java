@@ -3,6 +3,7 @@ package cn.hugo.android.scanner.decode;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.MultiFormatReader;
 import com.google.zxing.NotFoundException;
 import com.google.zxing.Result;
@@ -11,6 +12,7 @@ import com.google.zxing.common.HybridBinarizer;
 import android.content.Context;
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -51,9 +53,25 @@ public class BitmapDecoder {
         if (bitmap == null) {
             return null;
         }
-		try {
-            return mMultiFormatReader.decodeWithState(new BinaryBitmap(
-                    new HybridBinarizer(new BitmapLuminanceSource(bitmap))));
+        return getRawResult(new BitmapLuminanceSource(bitmap));
+    }
+
+    /**
+     * 從亮度平面解碼（例如映射到記憶體的灰階檔），不複製成byte[]
+     *
+     * @param luminance One byte per pixel, read with absolute and bulk gets.
+     * @param rowStride Bytes from one row to the next.
+     */
+    public Result getRawResult(ByteBuffer luminance, int rowStride, int width, int height) {
+        if (luminance == null) {
+            return null;
+        }
+        return getRawResult(new YuvPlaneLuminanceSource(luminance, rowStride, width, height));
+    }
+
+    private Result getRawResult(LuminanceSource source) {
+        try {
+            return mMultiFormatReader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
         } catch (NotFoundException e) {
             e.printStackTrace();
         }
@@ -6,17 +6,47 @@ import android.graphics.Bitmap;
 
 public class BitmapLuminanceSource extends LuminanceSource {
     private static final String TAG = BitmapLuminanceSource.class.getSimpleName();
+
+    /**
+     * 每次從點陣圖讀取的像素數上限（約64KB），按整行取整
+     */
+    private static final int STRIP_PIXELS = 16 * 1024;
+
+    /**
+     * ITU-R BT.601亮度權重，乘以1024的定點數：0.299, 0.587, 0.114
+     */
+    private static final int LUMA_R = 306;
+    private static final int LUMA_G = 601;
+    private static final int LUMA_B = 117;
+
     private byte mBitmapPixels[];
 
     protected BitmapLuminanceSource(Bitmap bitmap) {
         super(bitmap.getWidth(), bitmap.getHeight());
-        // 首先，要取得該圖片的圖元陣列內容
-        int[] data = new int[bitmap.getWidth() * bitmap.getHeight()];
-        this.mBitmapPixels = new byte[bitmap.getWidth() * bitmap.getHeight()];
-        bitmap.getPixels(data, 0, getWidth(), 0, 0, getWidth(), getHeight());
-        // 將int陣列轉換為byte陣列，也就是取圖元值中藍色值部分作為辨析內容
-        for (int i = 0; i < data.length; i++) {
-            this.mBitmapPixels[i] = (byte) data[i];
+        int width = getWidth();
+        int height = getHeight();
+        this.mBitmapPixels = new byte[width * height];
+        // 按行帶分批讀取像素，避免一次分配整張圖的int陣列
+        int stripRows = Math.max(1, Math.min(height, STRIP_PIXELS / Math.max(1, width)));
+        int[] strip = new int[width * stripRows];
+        byte[] luminances = this.mBitmapPixels;
+        for (int top = 0; top < height; top += stripRows) {
+            int rows = Math.min(stripRows, height - top);
+            bitmap.getPixels(strip, 0, width, 0, top, width, rows);
+            toLuminance(strip, rows * width, luminances, top * width);
+        }
+    }
+
+    /**
+     * 按R、G、B加權計算亮度，而不是只取藍色分量
+     */
+    private static void toLuminance(int[] argb, int count, byte[] out, int offset) {
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            out[offset + i] = (byte) ((r * LUMA_R + g * LUMA_G + b * LUMA_B) >> 10);
         }
     }
 
@@ -28,9 +58,14 @@ public class BitmapLuminanceSource extends LuminanceSource {
 
     @Override
     public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        if (row == null || row.length < getWidth()) {
+            row = new byte[getWidth()];
+        }
         // 這裏要得到指定行的圖元資料
         System.arraycopy(mBitmapPixels, y * getWidth(), row, 0, getWidth());
         return row;
     }
 }
-
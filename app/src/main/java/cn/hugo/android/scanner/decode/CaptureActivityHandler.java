@@ -21,19 +21,24 @@ import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import cn.hugo.android.scanner.R;
 import cn.hugo.android.scanner.camera.CameraManager;
+import cn.hugo.android.scanner.camera.FrameMailbox;
+import cn.hugo.android.scanner.config.Config;
 import cn.hugo.android.scanner.view.ViewfinderResultPointCallback;
 
 /**
@@ -46,12 +51,45 @@ public final class CaptureActivityHandler extends Handler {
     private static final String TAG = CaptureActivityHandler.class.getSimpleName();
     private DecodeInterface activity;
     /**
-     * 真正負責掃描任務的核心線程
+     * 真正負責掃描任務的解碼線程池
      */
-    private final DecodeThread mDecodethread;
+    private final DecodeWorkerPool mDecodePool;
+
+    /**
+     * 相機與解碼線程池之間的單槽信箱，只保留最新的一幀
+     */
+    private final FrameMailbox mFrameMailbox = new FrameMailbox();
+
+    private final DecodeMetrics mMetrics = new DecodeMetrics();
+
+    private DecodeMetrics.Listener mMetricsListener;
 
     private State mState;
 
+    /**
+     * 掃描框正在顯示的結果縮略圖，重新開始掃描時歸還給點陣圖池
+     */
+    private Bitmap mShownThumbnail;
+
+    /**
+     * 連續掃描模式下重複結果的時間窗口
+     */
+    private static final long BULK_DUPLICATE_WINDOW_MS = 5000L;
+
+    private static final int BULK_DUPLICATE_CAPACITY = 64;
+
+    /**
+     * 連續掃描：解碼成功後不停止，一直解碼下去
+     */
+    private final boolean mBulkMode;
+
+    /**
+     * 連續掃描時是否回調重複的結果
+     */
+    private final boolean mRememberDuplicates;
+
+    private final RecentResultCache mRecentResults = new RecentResultCache(BULK_DUPLICATE_WINDOW_MS, BULK_DUPLICATE_CAPACITY);
+
     private final CameraManager mCameraManager;
 
     /**
@@ -73,18 +111,38 @@ public final class CaptureActivityHandler extends Handler {
     }
 
     public CaptureActivityHandler(DecodeInterface activity, Collection<BarcodeFormat> decodeFormats, Map<DecodeHintType, ?> baseHints, String characterSet, CameraManager cameraManager) {
+        this(activity, decodeFormats, baseHints, characterSet, cameraManager, DecodeWorkerPool.defaultPoolSize());
+    }
+
+    /**
+     * The camera must already be open and previewing, with
+     * {@link #previewBufferCount(int)} buffers for {@code decodeWorkers}:
+     * {@link CameraManager#openDriverAsync} starts the preview on the camera
+     * thread.
+     *
+     * @param decodeWorkers 並行解碼的線程數
+     */
+    public CaptureActivityHandler(DecodeInterface activity, Collection<BarcodeFormat> decodeFormats, Map<DecodeHintType, ?> baseHints, String characterSet, CameraManager cameraManager, int decodeWorkers) {
         this.activity = activity;
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity.getContext());
+        mBulkMode = prefs.getBoolean(Config.KEY_BULK_MODE, false);
+        mRememberDuplicates = prefs.getBoolean(Config.KEY_REMEMBER_DUPLICATES, false);
         // 啟動掃描線程
-        mDecodethread = new DecodeThread(activity, decodeFormats, baseHints, characterSet, new ViewfinderResultPointCallback(activity.getViewfinderView()));
-        mDecodethread.start();
+        mDecodePool = new DecodeWorkerPool(activity, decodeFormats, baseHints, characterSet, new ViewfinderResultPointCallback(activity.getViewfinderView()), mFrameMailbox, mMetrics, decodeWorkers);
+        mDecodePool.start();
         mState = State.SUCCESS;
         // Start ourselves capturing previews and decoding.
         this.mCameraManager = cameraManager;
-        // 開啟相機預覽介面
-        cameraManager.startPreview();
         restartPreviewAndDecode();
     }
 
+    /**
+     * 每個解碼線程最多佔用一個預覽緩衝區，信箱佔一個，另留一個給相機填充
+     */
+    public static int previewBufferCount(int decodeWorkers) {
+        return decodeWorkers + 2;
+    }
+
     @Override
     public void handleMessage(Message message) {
         switch (message.what) {
@@ -93,30 +151,42 @@ public final class CaptureActivityHandler extends Handler {
                 restartPreviewAndDecode();
                 break;
             case R.id.decode_succeeded:
+                if (mState != State.PREVIEW) {
+                    // Another worker already delivered a result for this scan.
+                    Bundle lateBundle = message.getData();
+                    if (lateBundle != null) {
+                        mDecodePool.getThumbnailPool().release((Bitmap) lateBundle.getParcelable(DecodeThread.BARCODE_BITMAP));
+                    }
+                    break;
+                }
                 Log.d(TAG, "Got decode succeeded message");
-                mState = State.SUCCESS;
                 Bundle bundle = message.getData();
                 Bitmap barcode = null;
                 float scaleFactor = 1.0f;
                 if (bundle != null) {
-                    byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-                    if (compressedBitmap != null) {
-                        barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-                        // Mutable copy:
-                        barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
-                    }
+                    // 同一進程內Bundle不會序列化，拿到的就是解碼線程畫好的可變點陣圖
+                    barcode = bundle.getParcelable(DecodeThread.BARCODE_BITMAP);
                     scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
+                    long dispatchedAt = bundle.getLong(DecodeThread.RESULT_DISPATCH_NANOS);
+                    if (dispatchedAt != 0L) {
+                        mMetrics.record(DecodeMetrics.Stage.RESULT_DISPATCH, System.nanoTime() - dispatchedAt);
+                    }
                 }
-
-                //FIXME
-                activity.handleDecode((Result) message.obj, barcode,
-                        scaleFactor);
+                if (mBulkMode) {
+                    handleBulkResult(message.obj, barcode, scaleFactor);
+                    break;
+                }
+                mState = State.SUCCESS;
+                // 停止送幀，並讓其他線程丟棄手上的幀
+                mCameraManager.setFrameMailbox(null);
+                mDecodePool.cancelInFlight();
+                mShownThumbnail = barcode;
+                deliverResult(message.obj, barcode, scaleFactor);
                 break;
-            case R.id.decode_failed:
-                // We're decoding as fast as possible, so when one decode fails,
-                // start another.
-                mState = State.PREVIEW;
-                mCameraManager.requestPreviewFrame(mDecodethread.getHandler(), R.id.decode);
+            case R.id.metrics_report:
+                if (mMetricsListener != null) {
+                    mMetricsListener.onMetricsReport(mMetrics.snapshot(mFrameMailbox.getDroppedCount()));
+                }
                 break;
             case R.id.return_scan_result: //FIXME
                 Log.d(TAG, "Got return scan result message");
@@ -161,23 +231,75 @@ public final class CaptureActivityHandler extends Handler {
         }
     }
 
+    /**
+     * 連續掃描：信箱保持連接，解碼線程繼續取下一幀；時間窗口內重複的結果不回調
+     */
+    private void handleBulkResult(Object decoded, Bitmap barcode, float scaleFactor) {
+        if (!mRememberDuplicates) {
+            decoded = filterDuplicates(decoded, System.currentTimeMillis());
+        }
+        if (decoded == null) {
+            mDecodePool.getThumbnailPool().release(barcode);
+            return;
+        }
+        Bitmap previous = mShownThumbnail;
+        mShownThumbnail = barcode;
+        deliverResult(decoded, barcode, scaleFactor);
+        // 上一張縮略圖已被新的取代
+        mDecodePool.getThumbnailPool().release(previous);
+    }
+
+    /**
+     * @return The results not seen within the window, as a Result or a
+     * Result[] like the input, or null if all of them were.
+     */
+    private Object filterDuplicates(Object decoded, long nowMs) {
+        if (decoded instanceof Result) {
+            return isRecent((Result) decoded, nowMs) ? null : decoded;
+        }
+        Result[] results = (Result[]) decoded;
+        List<Result> fresh = new ArrayList<Result>(results.length);
+        for (Result result : results) {
+            if (!isRecent(result, nowMs)) {
+                fresh.add(result);
+            }
+        }
+        return fresh.isEmpty() ? null : fresh.toArray(new Result[fresh.size()]);
+    }
+
+    private boolean isRecent(Result result, long nowMs) {
+        return mRecentResults.isDuplicate(result.getBarcodeFormat() + ":" + result.getText(), nowMs);
+    }
+
+    private void deliverResult(Object decoded, Bitmap barcode, float scaleFactor) {
+        //FIXME
+        if (decoded instanceof Result[]) {
+            activity.handleDecodeMultiple((Result[]) decoded, barcode, scaleFactor);
+        } else {
+            activity.handleDecode((Result) decoded, barcode,
+                    scaleFactor);
+        }
+    }
+
+    /**
+     * 是否為連續掃描模式（Config.KEY_BULK_MODE），此時解碼成功後不會停止，也不需要發送restart_preview
+     */
+    public boolean isBulkMode() {
+        return mBulkMode;
+    }
+
     public void quitSynchronously() {
         mState = State.DONE;
         mCameraManager.stopPreview();
-        Message quit = Message.obtain(mDecodethread.getHandler(), R.id.quit);
-        quit.sendToTarget();
-
-        try {
-            // Wait at most half a second; should be enough time, and onPause()
-            // will timeout quickly
-            mDecodethread.join(500L);
-        } catch (InterruptedException e) {
-            // continue
-        }
+        // Wait at most half a second; should be enough time, and onPause()
+        // will timeout quickly
+        mDecodePool.quitSynchronously(500L);
 
         // Be absolutely sure we don't send any queued up messages
         removeMessages(R.id.decode_succeeded);
-        removeMessages(R.id.decode_failed);
+        removeMessages(R.id.metrics_report);
+        // 正在顯示的縮略圖不在池中，留給掃描框
+        mDecodePool.getThumbnailPool().clear();
     }
 
     /**
@@ -186,11 +308,49 @@ public final class CaptureActivityHandler extends Handler {
     private void restartPreviewAndDecode() {
         if (mState == State.SUCCESS) {
             mState = State.PREVIEW;
-            // 向decodeThread綁定的handler（DecodeHandler)發送解碼消息
-            mCameraManager.requestPreviewFrame(mDecodethread.getHandler(), R.id.decode);
+            // 相機持續把最新的幀送進信箱，解碼線程池自行取幀
+            mDecodePool.onRestart();
+            mCameraManager.setFrameMailbox(mFrameMailbox);
             //FIXME
             activity.drawViewfinder();
+            // 掃描框已不再引用上一次的縮略圖
+            mDecodePool.getThumbnailPool().release(mShownThumbnail);
+            mShownThumbnail = null;
         }
 	}
-}
 
+    /**
+     * 設置接收性能報告的監聽器，報告在ui線程回調
+     */
+    public void setMetricsListener(DecodeMetrics.Listener listener) {
+        this.mMetricsListener = listener;
+    }
+
+    /**
+     * Asks for a snapshot of the decode metrics (p50/p95/p99 per stage,
+     * counts per format). It is delivered to the listener set with
+     * {@link #setMetricsListener(DecodeMetrics.Listener)}. May be called from
+     * any thread.
+     */
+    public void requestMetricsReport() {
+        sendEmptyMessage(R.id.metrics_report);
+    }
+
+    public DecodeMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 相機送進信箱、但沒等到解碼就被新幀覆蓋的幀數。持續增長說明解碼跟不上相機
+     */
+    public long getDroppedFrameCount() {
+        return mFrameMailbox.getDroppedCount();
+    }
+
+    /**
+     * 解碼線程從信箱中取走的幀數
+     */
+    public long getDecodedFrameCount() {
+        return mFrameMailbox.getTakenCount();
+    }
+}
@@ -19,7 +19,9 @@ package cn.hugo.android.scanner.decode;
 import com.google.zxing.BarcodeFormat;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.util.Log;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -27,6 +29,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import cn.hugo.android.scanner.config.Config;
 import cn.hugo.android.scanner.config.Intents;
 
 public class DecodeFormatManager {
@@ -37,12 +40,84 @@ public class DecodeFormatManager {
     static final Collection<BarcodeFormat> QR_CODE_FORMATS = EnumSet.of(BarcodeFormat.QR_CODE);
     static final Collection<BarcodeFormat> DATA_MATRIX_FORMATS = EnumSet.of(BarcodeFormat.DATA_MATRIX);
 
+    /**
+     * 最近沒有命中的格式每隔多少幀才嘗試一次（未設置時）
+     */
+    static final int DEFAULT_RARE_FORMAT_INTERVAL = 5;
+
     static {
         PRODUCT_FORMATS = EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED);
         ONE_D_FORMATS = EnumSet.of(BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128, BarcodeFormat.ITF, BarcodeFormat.CODABAR);
         ONE_D_FORMATS.addAll(PRODUCT_FORMATS);
     }
 
+    /**
+     * 設置中勾選的格式，可能為空（即所有格式）
+     */
+    public static Collection<BarcodeFormat> parseDecodeFormats(SharedPreferences prefs) {
+        Collection<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+        if (prefs.getBoolean(Config.KEY_DECODE_1D, false)) {
+            decodeFormats.addAll(ONE_D_FORMATS);
+        }
+        if (prefs.getBoolean(Config.KEY_DECODE_QR, false)) {
+            decodeFormats.addAll(QR_CODE_FORMATS);
+        }
+        if (prefs.getBoolean(Config.KEY_DECODE_DATA_MATRIX, false)) {
+            decodeFormats.addAll(DATA_MATRIX_FORMATS);
+        }
+        return decodeFormats;
+    }
+
+    /**
+     * Formats the preview decoder always tries first and never throttles,
+     * whatever their recent hit rate: {@link Config#KEY_PINNED_FORMATS}, a
+     * comma separated list of format names such as "CODE_128". Unknown
+     * names are skipped.
+     *
+     * 預覽解碼時永遠優先嘗試、不會因冷門而降頻的格式，預設為空
+     */
+    public static Collection<BarcodeFormat> parsePinnedFormats(SharedPreferences prefs) {
+        Collection<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+        String pinned = prefs.getString(Config.KEY_PINNED_FORMATS, null);
+        if (pinned != null) {
+            for (String format : COMMA_PATTERN.split(pinned)) {
+                format = format.trim();
+                if (format.isEmpty()) {
+                    continue;
+                }
+                try {
+                    formats.add(BarcodeFormat.valueOf(format));
+                } catch (IllegalArgumentException iae) {
+                    Log.w(TAG, "Unknown pinned format: " + format);
+                }
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * On how many frames a reader whose formats have gone cold is tried,
+     * one in N: {@link Config#KEY_RARE_FORMAT_INTERVAL}, 1 meaning no
+     * throttling.
+     *
+     * 冷門格式每隔多少幀嘗試一次，預設為5
+     */
+    public static int parseRareFormatInterval(SharedPreferences prefs) {
+        String interval = prefs.getString(Config.KEY_RARE_FORMAT_INTERVAL, null);
+        if (interval != null) {
+            try {
+                int value = Integer.parseInt(interval.trim());
+                if (value >= 1) {
+                    return value;
+                }
+            } catch (NumberFormatException nfe) {
+                // fall through
+            }
+            Log.w(TAG, "Bad rare format interval: " + interval);
+        }
+        return DEFAULT_RARE_FORMAT_INTERVAL;
+    }
+
     public static Collection<BarcodeFormat> parseDecodeFormats(Intent intent) {
         Iterable<String> scanFormats = null;
         CharSequence scanFormatsString = intent.getStringExtra(Intents.Scan.FORMATS);
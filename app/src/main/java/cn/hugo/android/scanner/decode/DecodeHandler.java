@@ -18,34 +18,98 @@ package cn.hugo.android.scanner.decode;
 
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.HybridBinarizer;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 import cn.hugo.android.scanner.R;
+import cn.hugo.android.scanner.camera.CameraManager;
+import cn.hugo.android.scanner.camera.FrameMailbox;
+import cn.hugo.android.scanner.camera.PreviewFrame;
 
 public class DecodeHandler extends Handler {
     private static final String TAG = DecodeHandler.class.getSimpleName();
     private DecodeInterface activity;
-    private final MultiFormatReader mMultiFormatReader;
+    private final ScheduledFormatReader mReader;
+
+    /**
+     * 多條碼模式的讀取器，單條碼模式下為null
+     */
+    private final MultiBarcodeReader mMultiReader;
+    private final FrameRotator mFrameRotator = new FrameRotator();
+
+    /**
+     * 解碼前的幀質量檢查，關閉時為null
+     */
+    private final FrameQualityGate mQualityGate;
+
+    /**
+     * 共用的畫面變化判斷，關閉時為null；簽名和取樣行緩衝區每個線程一份
+     */
+    private final SceneChangeDetector mSceneChangeDetector;
+    private final int[] mSignature = new int[SceneChangeDetector.SIGNATURE_SIZE * SceneChangeDetector.SIGNATURE_SIZE];
+    private byte[] mSignatureRow;
+    private final DecodeWorkerPool mPool;
+    private final FrameMailbox mMailbox;
+    private final DecodeMetrics mMetrics;
+
+    /**
+     * 繪製縮略圖用的像素緩衝區，掃描框尺寸不變時重複使用
+     */
+    private int[] mThumbnailPixels;
+
+    private final RoiTracker mRoiTracker;
+
+    /**
+     * 本幀解碼區域在掃描框中的位置：left, top, width, height
+     */
+    private final int[] mRegion = new int[4];
+
+    private final RegionPointCallback mPointCallback;
+
     private boolean mRunning = true;
 
-    public DecodeHandler(DecodeInterface activity, Map<DecodeHintType, Object> hints) {
-        mMultiFormatReader = new MultiFormatReader();
-        mMultiFormatReader.setHints(hints);
+    /**
+     * 連續多少幀找到候選點卻沒有解碼成功後要求重新對焦
+     */
+    private static final int NEAR_MISSES_BEFORE_FOCUS = 3;
+
+    /**
+     * 本線程連續找到候選點但解碼失敗的幀數
+     */
+    private int mNearMisses;
+
+    public DecodeHandler(DecodeInterface activity, Map<DecodeHintType, Object> hints, DecodeWorkerPool pool, FrameMailbox mailbox, DecodeMetrics metrics) {
+        // 每個線程用自己的回調收集候選點，並換算回掃描框座標
+        mPointCallback = new RegionPointCallback((ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK));
+        Map<DecodeHintType, Object> workerHints = new EnumMap<DecodeHintType, Object>(hints);
+        workerHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, mPointCallback);
+        // 讀取器按各格式最近的命中率排程，統計由解碼線程池共用
+        mReader = new ScheduledFormatReader(workerHints, pool.getFormatScheduler());
+        int maxResults = activity.getMaxResultsPerFrame();
+        mMultiReader = maxResults > 1 ? new MultiBarcodeReader(workerHints, maxResults) : null;
         this.activity = activity;
+        this.mQualityGate = pool.isQualityGateEnabled() ? new FrameQualityGate() : null;
+        this.mSceneChangeDetector = pool.getSceneChangeDetector();
+        this.mRoiTracker = pool.getRoiTracker();
+        this.mPool = pool;
+        this.mMailbox = mailbox;
+        this.mMetrics = metrics;
     }
 
     @Override
@@ -55,7 +119,7 @@ public class DecodeHandler extends Handler {
         }
         switch (message.what) {
             case R.id.decode:
-                decode((byte[]) message.obj, message.arg1, message.arg2);
+                decodeNextFrame();
                 break;
             case R.id.quit:
                 mRunning = false;
@@ -64,68 +128,279 @@ public class DecodeHandler extends Handler {
         }
     }
 
+    /**
+     * Takes the newest frame out of the mailbox and decodes it. While more
+     * frames are waiting the worker stays busy and posts itself another
+     * R.id.decode, so a quit message still gets through between frames.
+     */
+    private void decodeNextFrame() {
+        PreviewFrame frame = mMailbox.take();
+        if (frame != null) {
+            decode(frame);
+        }
+        if (mRunning && mMailbox.hasFrame()) {
+            sendEmptyMessage(R.id.decode);
+        } else {
+            mPool.release(this);
+        }
+    }
+
     /**
      * Decode the data within the viewfinder rectangle, and time how long it
      * took. For efficiency, reuse the same reader objects from one decode to
      * the next.
      *
-     * @param data   The YUV preview frame.
-     * @param width  The width of the preview frame.
-     * @param height The height of the preview frame.
+     * @param frame The preview frame, released before returning.
      */
-    private void decode(byte[] data, int width, int height) {
-        long start = System.currentTimeMillis();
+    private void decode(PreviewFrame frame) {
+        long start = System.nanoTime();
+        int generation = mPool.currentGeneration();
         Result rawResult = null;
-		byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++)
-                rotatedData[x * height + height - y - 1] = data[x + y * width];
-        }
-        int tmp = width;
-        width = height;
-        height = tmp;
-        PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(rotatedData, width, height);
-        if (source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-            try {
-                // 預覽介面最終取到的是個bitmap，然後對其進行解碼
-                rawResult = mMultiFormatReader.decodeWithState(bitmap);
-            } catch (ReaderException re) {
-                // continue
-            } finally {
-                mMultiFormatReader.reset();
+        Result[] rawResults = null;
+        LuminanceSource source = null;
+        CameraManager cameraManager = activity.getCameraManager();
+        boolean cropped = false;
+        // 畫面未變化或未通過質量檢查的幀不解碼
+        boolean skipped = false;
+        try {
+            Rect rect = cameraManager.getFramingRectInPreview();
+            if (rect != null) {
+                if (mMultiReader == null) {
+                    // 上幾幀找到候選點時只解碼其周圍的區域
+                    cropped = mRoiTracker.region(rect.width(), rect.height(), mRegion);
+                } else {
+                    // 多條碼模式要看整個掃描框
+                    mRegion[0] = 0;
+                    mRegion[1] = 0;
+                    mRegion[2] = rect.width();
+                    mRegion[3] = rect.height();
+                }
+                mPointCallback.begin(mRegion[0], mRegion[1]);
+                // 直接在預覽幀上建立旋轉、裁剪的視圖，不複製資料；只計建立視圖的時間，不含取掃描框時等待的鎖
+                int rotation = cameraManager.getPreviewRotation();
+                long luminanceStart = System.nanoTime();
+                source = buildSource(frame, rotation,
+                        rect.left + mRegion[0], rect.top + mRegion[1], mRegion[2], mRegion[3], mFrameRotator);
+                mMetrics.record(DecodeMetrics.Stage.LUMINANCE, System.nanoTime() - luminanceStart);
             }
+            long nowMs = System.currentTimeMillis();
+            if (source != null && mSceneChangeDetector != null && mPool.isCurrent(generation)) {
+                // 對焦後的幀即使畫面看似沒變也要解碼
+                mSceneChangeDetector.onFocusCount(cameraManager.getFocusCount());
+                mSignatureRow = SceneChangeDetector.signature(source, mSignature, mSignatureRow);
+                if (!mSceneChangeDetector.shouldDecode(mSignature, nowMs)) {
+                    mMetrics.recordUnchanged();
+                    skipped = true;
+                }
+            }
+            if (source != null && !skipped && mQualityGate != null && mPool.isCurrent(generation)) {
+                skipped = !passesQualityGate(source, cameraManager);
+            }
+            if (source != null && !skipped && mPool.isCurrent(generation)) {
+                if (mSceneChangeDetector != null) {
+                    mSceneChangeDetector.markDecoded(mSignature, nowMs);
+                }
+                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+                try {
+                    // 二維格式的讀取器一定會用到二值化矩陣，這時可以提前生成以單獨統計二值化耗時；
+                    // 本幀只跑一維讀取器時則完全不需要
+                    boolean needsBlackMatrix = mMultiReader != null ? mMultiReader.needsBlackMatrix() : mReader.beginFrame();
+                    if (needsBlackMatrix) {
+                        // 只有二值化需要掃描框的完整矩陣，一維格式逐行讀取原始幀
+                        long rotateStart = System.nanoTime();
+                        source.getMatrix();
+                        long binarizeStart = System.nanoTime();
+                        mMetrics.record(DecodeMetrics.Stage.ROTATE, binarizeStart - rotateStart);
+                        // BinaryBitmap會緩存該矩陣，解碼時不會重複計算
+                        bitmap.getBlackMatrix();
+                        mMetrics.record(DecodeMetrics.Stage.BINARIZE, System.nanoTime() - binarizeStart);
+                    }
+                    long decodeStart = System.nanoTime();
+                    try {
+                        // 預覽介面最終取到的是個bitmap，然後對其進行解碼
+                        if (mMultiReader != null) {
+                            List<Result> results = mMultiReader.decode(bitmap);
+                            rawResults = results.isEmpty() ? null : results.toArray(new Result[results.size()]);
+                        } else {
+                            rawResult = mReader.decode(bitmap);
+                        }
+                    } finally {
+                        mMetrics.record(DecodeMetrics.Stage.DECODE, System.nanoTime() - decodeStart);
+                    }
+                } catch (ReaderException re) {
+                    // continue
+                } finally {
+                    if (mMultiReader != null) {
+                        mMultiReader.reset();
+                    } else {
+                        mReader.reset();
+                    }
+                }
+                if (mMultiReader == null) {
+                    mRoiTracker.update(rect.width(), rect.height(), mPointCallback.mXs, mPointCallback.mYs, mPointCallback.mCount);
+                }
+                trackNearMisses(rawResult != null || rawResults != null, cameraManager);
+            }
+
+            if (!mPool.isCurrent(generation)) {
+                // Another worker already won, drop whatever this frame produced.
+                return;
+            }
+
+            // 解碼失敗不再通知CaptureActivityHandler，相機會一直往信箱送新幀
+            Handler handler = activity.getHandler();
+            if (rawResult != null || rawResults != null) {
+                // 單條碼模式送出Result，多條碼模式送出Result[]
+                Object decoded;
+                if (rawResults != null) {
+                    for (Result result : rawResults) {
+                        mMetrics.recordSuccess(result.getBarcodeFormat());
+                    }
+                    decoded = rawResults;
+                } else {
+                    mMetrics.recordSuccess(rawResult.getBarcodeFormat());
+                    if (cropped) {
+                        // 結果點和縮略圖都以整個掃描框為準
+                        rawResult = ResultMerger.translate(rawResult, mRegion[0], mRegion[1]);
+                        source = buildSource(frame, cameraManager.getPreviewRotation(),
+                                rect.left, rect.top, rect.width(), rect.height(), null);
+                    }
+                    decoded = rawResult;
+                }
+                // Don't log the barcode contents for security.
+                Log.d(TAG, "Found barcode in " + (System.nanoTime() - start) / 1000000L + " ms");
+                if (handler != null) {
+                    Message message = Message.obtain(handler, R.id.decode_succeeded, decoded);
+                    Bundle bundle = new Bundle();
+                    bundle.putLong(DecodeThread.RESULT_DISPATCH_NANOS, System.nanoTime());
+                    bundleThumbnail(source, bundle);
+                    message.setData(bundle);
+                    message.sendToTarget();
+                }
+            } else if (source != null && !skipped) {
+                mMetrics.recordFailure(mMultiReader != null ? mMultiReader.getFormats() : mReader.getAttemptedFormats());
+            }
+        } finally {
+            // source直接引用預覽緩衝區，縮略圖生成之後才能還給相機
+            cameraManager.releasePreviewFrame(frame);
         }
+    }
 
-        Handler handler = activity.getHandler();
-        if (rawResult != null) {
-            // Don't log the barcode contents for security.
-            long end = System.currentTimeMillis();
-            Log.d(TAG, "Found barcode in " + (end - start) + " ms");
-            if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
-                Bundle bundle = new Bundle();
-                bundleThumbnail(source, bundle);
-                message.setData(bundle);
-                message.sendToTarget();
+    /**
+     * Feeds the decode outcome to the focus logic: a success postpones the
+     * periodic focus runs, while candidate points found frame after frame
+     * without a result suggest a barcode that is there but out of focus.
+     * A near miss also drops the scene-change reference, so that the next
+     * frames of a still scene are decoded and counted too instead of being
+     * skipped as unchanged.
+     */
+    private void trackNearMisses(boolean decoded, CameraManager cameraManager) {
+        if (decoded) {
+            mNearMisses = 0;
+            cameraManager.onDecodeSucceeded();
+        } else if (mPointCallback.mCount >= RoiTracker.MIN_POINTS) {
+            if (mSceneChangeDetector != null) {
+                mSceneChangeDetector.reset();
             }
-        } else {
-            if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_failed);
-                message.sendToTarget();
+            if (++mNearMisses >= NEAR_MISSES_BEFORE_FOCUS) {
+                mNearMisses = 0;
+                cameraManager.requestFocus();
             }
+        } else {
+            mNearMisses = 0;
+        }
+    }
+
+    /**
+     * Runs the {@link FrameQualityGate} on the source. Frames turned down
+     * for being flat or blurred ask the camera to focus again; the camera
+     * side decides whether a focus run is due.
+     */
+    private boolean passesQualityGate(LuminanceSource source, CameraManager cameraManager) {
+        long start = System.nanoTime();
+        FrameQualityGate.Verdict verdict = mQualityGate.evaluate(source);
+        mMetrics.record(DecodeMetrics.Stage.QUALITY, System.nanoTime() - start);
+        if (verdict == FrameQualityGate.Verdict.ACCEPT) {
+            return true;
+        }
+        mMetrics.recordGated(verdict);
+        if (verdict.isOutOfFocus()) {
+            cameraManager.requestFocus();
         }
+        return false;
     }
 
-    private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
-        int[] pixels = source.renderThumbnail();
-        int width = source.getThumbnailWidth();
-        int height = source.getThumbnailHeight();
-        Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
-        bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
+    /**
+     * A rotated, cropped view over the frame: NV21 data from the Camera1
+     * backend, or the luminance plane from the Camera2 backend.
+     */
+    private static LuminanceSource buildSource(PreviewFrame frame, int rotation, int left, int top, int width, int height,
+                                               FrameRotator matrixRotator) {
+        byte[] data = frame.getData();
+        if (data != null) {
+            return new RotatedLuminanceSource(data, frame.getWidth(), frame.getHeight(), rotation,
+                    left, top, width, height, matrixRotator);
+        }
+        return new YuvPlaneLuminanceSource(frame.getPlane(), frame.getRowStride(), frame.getPixelStride(),
+                frame.getWidth(), frame.getHeight(), rotation, left, top, width, height, matrixRotator);
+    }
+
+    /**
+     * Renders the thumbnail straight into a bitmap from the pool; the UI
+     * thread gets the bitmap itself and hands it back to the pool.
+     */
+    private void bundleThumbnail(LuminanceSource source, Bundle bundle) {
+        int width = RotatedLuminanceSource.getThumbnailWidth(source);
+        int height = RotatedLuminanceSource.getThumbnailHeight(source);
+        if (mThumbnailPixels == null || mThumbnailPixels.length != width * height) {
+            mThumbnailPixels = new int[width * height];
+        }
+        RotatedLuminanceSource.renderThumbnail(source, mThumbnailPixels);
+        Bitmap bitmap = mPool.getThumbnailPool().acquire(width, height);
+        bitmap.setPixels(mThumbnailPixels, 0, width, 0, 0, width, height);
+        bundle.putParcelable(DecodeThread.BARCODE_BITMAP, bitmap);
         bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
     }
+
+    /**
+     * Collects the candidate points of one frame for the {@link RoiTracker},
+     * translated from the decoded region back to framing rect coordinates,
+     * and passes them on to the viewfinder. Only ever called on the worker's
+     * own thread.
+     */
+    private static final class RegionPointCallback implements ResultPointCallback {
+        private static final int MAX_POINTS = 32;
+
+        private final ResultPointCallback mDownstream;
+        final float[] mXs = new float[MAX_POINTS];
+        final float[] mYs = new float[MAX_POINTS];
+        int mCount;
+        private int mOffsetX;
+        private int mOffsetY;
+
+        RegionPointCallback(ResultPointCallback downstream) {
+            this.mDownstream = downstream;
+        }
+
+        void begin(int offsetX, int offsetY) {
+            mCount = 0;
+            mOffsetX = offsetX;
+            mOffsetY = offsetY;
+        }
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            float x = point.getX() + mOffsetX;
+            float y = point.getY() + mOffsetY;
+            if (mCount < MAX_POINTS) {
+                mXs[mCount] = x;
+                mYs[mCount] = y;
+                mCount++;
+            }
+            if (mDownstream != null) {
+                mDownstream.foundPossibleResultPoint(mOffsetX == 0 && mOffsetY == 0 ? point : new ResultPoint(x, y));
+            }
+        }
+    }
 }
 
@@ -21,7 +21,20 @@ public interface DecodeInterface {
 
     Handler getHandler();
 
+    /**
+     * barcode來自解碼線程的點陣圖池，下一次drawViewfinder之後會被重複使用，不要recycle或長期持有
+     */
     void handleDecode(Result rawResult, Bitmap barcode, float scaleFactor);
 
+    /**
+     * 每幀最多識別的條碼數，在開始掃描時讀取一次。大於1時啟用多條碼模式，結果經handleDecodeMultiple一次回調
+     */
+    int getMaxResultsPerFrame();
+
+    /**
+     * 多條碼模式下一幀中找到的所有條碼，已按內容和位置去重；barcode同handleDecode
+     */
+    void handleDecodeMultiple(Result[] rawResults, Bitmap barcode, float scaleFactor);
+
     void drawViewfinder();
 }
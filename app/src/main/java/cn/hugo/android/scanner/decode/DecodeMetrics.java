@@ -0,0 +1,269 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects per-stage latency histograms and per-format counters for the
+ * decode pipeline. All methods may be called from any thread; a
+ * {@link Report} is an immutable snapshot. <br/>
+ * <br/>
+ *
+ * 解碼流水線的性能指標：各階段的納秒級延遲直方圖，以及各條碼格式的成功、失敗次數
+ */
+public final class DecodeMetrics {
+    private static final String TAG = DecodeMetrics.class.getSimpleName();
+
+    /**
+     * 解碼流水線的各個階段
+     */
+    public enum Stage {
+        /**
+         * 相機相鄰兩幀到達的間隔
+         */
+        FRAME_ARRIVAL,
+        /**
+         * 生成旋轉後的掃描框矩陣（只在二值化需要時發生，一維格式直接逐行讀取預覽幀）
+         */
+        ROTATE,
+        /**
+         * 構造預覽幀上的LuminanceSource視圖
+         */
+        LUMINANCE,
+        /**
+         * 解碼前的幀質量檢查（FrameQualityGate）
+         */
+        QUALITY,
+        /**
+         * 二值化（只在需要二維矩陣的格式啟用時單獨計時，否則包含在DECODE中）
+         */
+        BINARIZE,
+        /**
+         * MultiFormatReader解碼
+         */
+        DECODE,
+        /**
+         * 從解碼線程發出結果到CaptureActivityHandler收到
+         */
+        RESULT_DISPATCH
+    }
+
+    /**
+     * Receives the reports requested with
+     * {@link CaptureActivityHandler#requestMetricsReport()}, on the UI thread.
+     */
+    public interface Listener {
+        void onMetricsReport(Report report);
+    }
+
+    private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+    private static final FrameQualityGate.Verdict[] VERDICTS = FrameQualityGate.Verdict.values();
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLong mFrameCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+
+    /**
+     * 未通過質量檢查、沒有解碼的幀數，按原因分別統計
+     */
+    private final AtomicLongArray mGatedCounts = new AtomicLongArray(VERDICTS.length);
+
+    /**
+     * 畫面與上一次解碼的幀相同而跳過的幀數
+     */
+    private final AtomicLong mUnchangedCount = new AtomicLong();
+    private final AtomicLongArray mFormatHits = new AtomicLongArray(FORMATS.length);
+    private final AtomicLongArray mFormatFailures = new AtomicLongArray(FORMATS.length);
+    private final AtomicLong mLastArrivalNanos = new AtomicLong();
+
+    public DecodeMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        mHistograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the interval since the previous frame arrived.
+     */
+    public void recordFrameArrival(long nowNanos) {
+        long last = mLastArrivalNanos.getAndSet(nowNanos);
+        if (last != 0) {
+            record(Stage.FRAME_ARRIVAL, nowNanos - last);
+        }
+    }
+
+    public void recordSuccess(BarcodeFormat format) {
+        mFrameCount.incrementAndGet();
+        mFormatHits.incrementAndGet(format.ordinal());
+    }
+
+    /**
+     * Records a frame in which none of {@code attemptedFormats} was found.
+     *
+     * @param attemptedFormats The formats the reader looked for; null or empty
+     *                         means every format.
+     */
+    public void recordFailure(Collection<BarcodeFormat> attemptedFormats) {
+        mFrameCount.incrementAndGet();
+        mFailureCount.incrementAndGet();
+        if (attemptedFormats == null || attemptedFormats.isEmpty()) {
+            for (int i = 0; i < FORMATS.length; i++) {
+                mFormatFailures.incrementAndGet(i);
+            }
+        } else {
+            for (BarcodeFormat format : attemptedFormats) {
+                mFormatFailures.incrementAndGet(format.ordinal());
+            }
+        }
+    }
+
+    /**
+     * Records a frame the {@link FrameQualityGate} turned down. It is not
+     * counted in the decoded frames.
+     */
+    public void recordGated(FrameQualityGate.Verdict verdict) {
+        mGatedCounts.incrementAndGet(verdict.ordinal());
+    }
+
+    /**
+     * Records a frame skipped because the scene had not changed.
+     */
+    public void recordUnchanged() {
+        mUnchangedCount.incrementAndGet();
+    }
+
+    public Report snapshot(long droppedFrames) {
+        return new Report(this, droppedFrames);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        mFrameCount.set(0);
+        mFailureCount.set(0);
+        for (int i = 0; i < VERDICTS.length; i++) {
+            mGatedCounts.set(i, 0);
+        }
+        mUnchangedCount.set(0);
+        for (int i = 0; i < FORMATS.length; i++) {
+            mFormatHits.set(i, 0);
+            mFormatFailures.set(i, 0);
+        }
+        mLastArrivalNanos.set(0);
+    }
+
+    /**
+     * Percentiles of one stage, in nanoseconds.
+     */
+    public static final class StageReport {
+        public final long count;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+        public final long max;
+
+        StageReport(LatencyHistogram histogram) {
+            count = histogram.getCount();
+            p50 = histogram.getValueAtPercentile(50.0);
+            p95 = histogram.getValueAtPercentile(95.0);
+            p99 = histogram.getValueAtPercentile(99.0);
+            max = histogram.getMax();
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " p50=" + toMillis(p50) + "ms p95=" + toMillis(p95) + "ms p99=" + toMillis(p99) + "ms max=" + toMillis(max) + "ms";
+        }
+
+        private static String toMillis(long nanos) {
+            return String.valueOf(Math.round(nanos / 10000.0) / 100.0);
+        }
+    }
+
+    /**
+     * An immutable snapshot of the metrics.
+     */
+    public static final class Report {
+        /**
+         * 送入讀取器解碼的幀數
+         */
+        public final long frames;
+        public final long failures;
+        public final long droppedFrames;
+
+        /**
+         * 未通過質量檢查的幀數
+         */
+        public final long gatedFrames;
+        public final Map<FrameQualityGate.Verdict, Long> gatedByVerdict;
+
+        /**
+         * 畫面沒有變化而跳過的幀數
+         */
+        public final long unchangedFrames;
+        public final Map<Stage, StageReport> stages;
+        public final Map<BarcodeFormat, Long> hitsByFormat;
+        public final Map<BarcodeFormat, Long> failuresByFormat;
+
+        Report(DecodeMetrics metrics, long droppedFrames) {
+            this.frames = metrics.mFrameCount.get();
+            this.failures = metrics.mFailureCount.get();
+            this.droppedFrames = droppedFrames;
+            long gated = 0;
+            Map<FrameQualityGate.Verdict, Long> gatedByVerdict = new EnumMap<FrameQualityGate.Verdict, Long>(FrameQualityGate.Verdict.class);
+            for (FrameQualityGate.Verdict verdict : VERDICTS) {
+                long count = metrics.mGatedCounts.get(verdict.ordinal());
+                if (count > 0) {
+                    gatedByVerdict.put(verdict, count);
+                    gated += count;
+                }
+            }
+            this.gatedFrames = gated;
+            this.gatedByVerdict = Collections.unmodifiableMap(gatedByVerdict);
+            this.unchangedFrames = metrics.mUnchangedCount.get();
+            Map<Stage, StageReport> stageReports = new EnumMap<Stage, StageReport>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                stageReports.put(stage, new StageReport(metrics.mHistograms[stage.ordinal()]));
+            }
+            this.stages = Collections.unmodifiableMap(stageReports);
+            Map<BarcodeFormat, Long> hits = new EnumMap<BarcodeFormat, Long>(BarcodeFormat.class);
+            Map<BarcodeFormat, Long> misses = new EnumMap<BarcodeFormat, Long>(BarcodeFormat.class);
+            for (BarcodeFormat format : FORMATS) {
+                long hit = metrics.mFormatHits.get(format.ordinal());
+                long miss = metrics.mFormatFailures.get(format.ordinal());
+                if (hit > 0) {
+                    hits.put(format, hit);
+                }
+                if (miss > 0) {
+                    misses.put(format, miss);
+                }
+            }
+            this.hitsByFormat = Collections.unmodifiableMap(hits);
+            this.failuresByFormat = Collections.unmodifiableMap(misses);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("frames=").append(frames).append(" failures=").append(failures).append(" dropped=").append(droppedFrames)
+                    .append(" gated=").append(gatedFrames).append(gatedByVerdict)
+                    .append(" unchanged=").append(unchangedFrames);
+            for (Map.Entry<Stage, StageReport> entry : stages.entrySet()) {
+                builder.append('\n').append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            builder.append("\nhits=").append(hitsByFormat).append("\nfailures=").append(failuresByFormat);
+            return builder.toString();
+        }
+    }
+}
@@ -16,26 +16,18 @@
 
 package cn.hugo.android.scanner.decode;
 
-import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.ResultPointCallback;
 
-import android.content.SharedPreferences;
-import android.os.Handler;
 import android.os.Looper;
-import android.preference.PreferenceManager;
-import android.util.Log;
 
-import java.util.Collection;
-import java.util.EnumMap;
-import java.util.EnumSet;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
-import cn.hugo.android.scanner.config.Config;
+import cn.hugo.android.scanner.camera.FrameMailbox;
 
 /**
- * This thread does all the heavy lifting of decoding the images.
+ * This thread does all the heavy lifting of decoding the images. Several of
+ * them run side by side inside a {@link DecodeWorkerPool}.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -45,47 +37,39 @@ public class DecodeThread extends Thread {
 
     public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
 
+    /**
+     * 解碼線程發出結果時的System.nanoTime()，用於統計結果分發的耗時
+     */
+    public static final String RESULT_DISPATCH_NANOS = "result_dispatch_nanos";
+
     private final DecodeInterface activity;
 
     private final Map<DecodeHintType, Object> mHints;
 
-    private Handler mHandler;
+    private final DecodeWorkerPool mPool;
+
+    private final FrameMailbox mMailbox;
+
+    private final DecodeMetrics mMetrics;
+
+    private DecodeHandler mHandler;
 
     private final CountDownLatch mHandlerInitLatch;
 
-    public DecodeThread(DecodeInterface activity, Collection<BarcodeFormat> decodeFormats, Map<DecodeHintType, ?> baseHints, String characterSet, ResultPointCallback resultPointCallback) {
+    /**
+     * @param hints 解碼參數，由{@link DecodeWorkerPool}統一生成，各工作線程共用
+     */
+    DecodeThread(DecodeInterface activity, Map<DecodeHintType, Object> hints, DecodeWorkerPool pool, FrameMailbox mailbox, DecodeMetrics metrics, int index) {
+        super(TAG + "-" + index);
         this.activity = activity;
+        this.mHints = hints;
+        this.mPool = pool;
+        this.mMailbox = mailbox;
+        this.mMetrics = metrics;
         mHandlerInitLatch = new CountDownLatch(1);
-        mHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
-        if (baseHints != null) {
-            mHints.putAll(baseHints);
-        }
-
-        // The prefs can't change while the thread is running, so pick them up
-        // once here.
-        if (decodeFormats == null || decodeFormats.isEmpty()) {
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity.getContext());
-            decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
-            if (prefs.getBoolean(Config.KEY_DECODE_1D, false)) {
-                decodeFormats.addAll(DecodeFormatManager.ONE_D_FORMATS);
-            }
-            if (prefs.getBoolean(Config.KEY_DECODE_QR, false)) {
-                decodeFormats.addAll(DecodeFormatManager.QR_CODE_FORMATS);
-            }
-            if (prefs.getBoolean(Config.KEY_DECODE_DATA_MATRIX, false)) {
-                decodeFormats.addAll(DecodeFormatManager.DATA_MATRIX_FORMATS);
-            }
-        }
-        mHints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-
-        if (characterSet != null) {
-            mHints.put(DecodeHintType.CHARACTER_SET, characterSet);
-        }
-        mHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
-        Log.i("DecodeThread", "Hints: " + mHints);
     }
 
-    Handler getHandler() {
+    DecodeHandler getHandler() {
         try {
             mHandlerInitLatch.await();
         } catch (InterruptedException ie) {
@@ -97,7 +81,8 @@ public class DecodeThread extends Thread {
     @Override
     public void run() {
         Looper.prepare();
-        mHandler = new DecodeHandler(activity, mHints);
+        // 每個工作線程擁有自己的MultiFormatReader
+        mHandler = new DecodeHandler(activity, mHints, mPool, mMailbox, mMetrics);
         mHandlerInitLatch.countDown();
         Looper.loop();
     }
@@ -0,0 +1,239 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ResultPointCallback;
+
+import android.content.SharedPreferences;
+import android.os.Message;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.hugo.android.scanner.R;
+import cn.hugo.android.scanner.camera.FrameMailbox;
+import cn.hugo.android.scanner.config.Config;
+
+/**
+ * A fixed pool of {@link DecodeThread}s. Every worker owns its own
+ * MultiFormatReader, so preview frames can be decoded in parallel. Frames
+ * come from a {@link FrameMailbox}: whenever the camera publishes one, an
+ * idle worker is woken up to take it, and a worker finishing a frame takes
+ * the next one before going idle. The first worker to find a barcode wins;
+ * {@link #cancelInFlight()} makes every other worker drop the frame it is
+ * working on. <br/>
+ * <br/>
+ *
+ * 解碼線程池：多個解碼線程並行地從信箱中取最新的預覽幀解碼，任一線程解碼成功後取消其他線程正在進行的解碼
+ */
+public final class DecodeWorkerPool implements FrameMailbox.Listener {
+    private static final String TAG = DecodeWorkerPool.class.getSimpleName();
+
+    private final DecodeThread[] mWorkers;
+
+    private final FrameMailbox mMailbox;
+
+    private final DecodeMetrics mMetrics;
+
+    /**
+     * 解碼成功時縮略圖使用的點陣圖池，各解碼線程共用
+     */
+    private final ThumbnailPool mThumbnailPool = new ThumbnailPool();
+
+    /**
+     * 根據候選點縮小解碼區域，各解碼線程共用
+     */
+    private final RoiTracker mRoiTracker = new RoiTracker(RoiTracker.DEFAULT_MAX_MISSES);
+
+    /**
+     * 各格式最近的命中統計，決定每幀嘗試哪些讀取器及其順序
+     */
+    private final FormatScheduler mFormatScheduler;
+
+    /**
+     * 是否在解碼前做幀質量檢查（Config.KEY_QUALITY_GATE）
+     */
+    private final boolean mQualityGateEnabled;
+
+    /**
+     * 畫面沒有變化時跳過解碼，關閉時為null（Config.KEY_SKIP_UNCHANGED_FRAMES）
+     */
+    private final SceneChangeDetector mSceneChangeDetector;
+
+    /**
+     * 空閒的解碼線程，解碼完成後由DecodeHandler放回
+     */
+    private final ConcurrentLinkedQueue<DecodeHandler> mIdleWorkers = new ConcurrentLinkedQueue<DecodeHandler>();
+
+    /**
+     * 每次取消時加一，解碼線程據此判斷手上的幀是否已過期
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    public DecodeWorkerPool(DecodeInterface activity, Collection<BarcodeFormat> decodeFormats, Map<DecodeHintType, ?> baseHints, String characterSet, ResultPointCallback resultPointCallback, FrameMailbox mailbox, DecodeMetrics metrics, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + poolSize);
+        }
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        if (baseHints != null) {
+            hints.putAll(baseHints);
+        }
+
+        // The prefs can't change while the threads are running, so pick them
+        // up once here.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity.getContext());
+        mQualityGateEnabled = prefs.getBoolean(Config.KEY_QUALITY_GATE, true);
+        mSceneChangeDetector = prefs.getBoolean(Config.KEY_SKIP_UNCHANGED_FRAMES, true)
+                ? new SceneChangeDetector(SceneChangeDetector.DEFAULT_REFRESH_MS, SceneChangeDetector.DEFAULT_MIN_CHANGE) : null;
+        if (decodeFormats == null || decodeFormats.isEmpty()) {
+            decodeFormats = DecodeFormatManager.parseDecodeFormats(prefs);
+        }
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
+
+        if (characterSet != null) {
+            hints.put(DecodeHintType.CHARACTER_SET, characterSet);
+        }
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+        Log.i(TAG, "Hints: " + hints + ", workers: " + poolSize);
+
+        mMailbox = mailbox;
+        mMetrics = metrics;
+        mFormatScheduler = new FormatScheduler(decodeFormats, DecodeFormatManager.parsePinnedFormats(prefs),
+                DecodeFormatManager.parseRareFormatInterval(prefs));
+        mWorkers = new DecodeThread[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            mWorkers[i] = new DecodeThread(activity, hints, this, mailbox, metrics, i);
+        }
+    }
+
+    /**
+     * 默認的線程數：可用的CPU核數
+     */
+    public static int defaultPoolSize() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void start() {
+        for (DecodeThread worker : mWorkers) {
+            worker.start();
+        }
+        for (DecodeThread worker : mWorkers) {
+            mIdleWorkers.offer(worker.getHandler());
+        }
+        mMailbox.setListener(this);
+    }
+
+    public int size() {
+        return mWorkers.length;
+    }
+
+    public boolean hasIdleWorker() {
+        return !mIdleWorkers.isEmpty();
+    }
+
+    /**
+     * Called on the camera thread for every published frame; wakes one idle
+     * worker. If all of them are busy the frame waits in the mailbox and the
+     * first worker to finish picks it up (or a newer one).
+     */
+    @Override
+    public void onFrameAvailable(FrameMailbox mailbox) {
+        mMetrics.recordFrameArrival(System.nanoTime());
+        wakeIdleWorker();
+    }
+
+    private void wakeIdleWorker() {
+        DecodeHandler worker = mIdleWorkers.poll();
+        if (worker != null) {
+            worker.sendEmptyMessage(R.id.decode);
+        }
+    }
+
+    /**
+     * Makes every frame taken so far stale. Workers still decoding one drop
+     * it at their next check and do not report a result.
+     */
+    public void cancelInFlight() {
+        mGeneration.incrementAndGet();
+    }
+
+    int currentGeneration() {
+        return mGeneration.get();
+    }
+
+    boolean isCurrent(int generation) {
+        return mGeneration.get() == generation;
+    }
+
+    /**
+     * Puts a worker back into the idle queue. A frame published while the
+     * worker was about to go idle would otherwise wait until the next one
+     * arrives, so check the mailbox once more.
+     */
+    void release(DecodeHandler worker) {
+        mIdleWorkers.offer(worker);
+        if (mMailbox.hasFrame()) {
+            wakeIdleWorker();
+        }
+    }
+
+    ThumbnailPool getThumbnailPool() {
+        return mThumbnailPool;
+    }
+
+    RoiTracker getRoiTracker() {
+        return mRoiTracker;
+    }
+
+    FormatScheduler getFormatScheduler() {
+        return mFormatScheduler;
+    }
+
+    boolean isQualityGateEnabled() {
+        return mQualityGateEnabled;
+    }
+
+    SceneChangeDetector getSceneChangeDetector() {
+        return mSceneChangeDetector;
+    }
+
+    /**
+     * Called when scanning starts again after a result: the next frame is
+     * decoded even if the scene has not changed.
+     */
+    void onRestart() {
+        if (mSceneChangeDetector != null) {
+            mSceneChangeDetector.reset();
+        }
+    }
+
+    /**
+     * Stops every worker and waits at most {@code timeoutMs} in total for them
+     * to exit.
+     */
+    public void quitSynchronously(long timeoutMs) {
+        mMailbox.setListener(null);
+        cancelInFlight();
+        for (DecodeThread worker : mWorkers) {
+            Message.obtain(worker.getHandler(), R.id.quit).sendToTarget();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (DecodeThread worker : mWorkers) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                worker.join(remaining);
+            } catch (InterruptedException e) {
+                // continue
+            }
+        }
+        mIdleWorkers.clear();
+    }
+}
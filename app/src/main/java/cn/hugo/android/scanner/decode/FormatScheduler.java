@@ -0,0 +1,97 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Collection;
+import java.util.EnumSet;
+
+/**
+ * Per-format hit statistics shared by the decode workers, used by
+ * {@link ScheduledFormatReader} to decide which readers run on a frame and in
+ * which order. Every decoded frame decays all scores a little and adds one to
+ * the format that was found, so the scores follow what has been scanned
+ * recently. <br/>
+ * <br/>
+ *
+ * 各格式最近的命中統計：每解一幀所有分數衰減一點，命中的格式加一
+ */
+final class FormatScheduler {
+    private static final String TAG = FormatScheduler.class.getSimpleName();
+
+    private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+    /**
+     * 每幀的衰減係數，約110幀（30fps下不到4秒）沒有命中的格式會從1.0降到冷門
+     */
+    static final float DECAY = 0.98f;
+
+    /**
+     * 分數低於此值的格式視為冷門
+     */
+    static final float COLD_SCORE = 0.1f;
+
+    /**
+     * 分數上限，避免長期使用某格式後切換格式要等很久
+     */
+    private static final float MAX_SCORE = 10.0f;
+
+    private final float[] mScores = new float[FORMATS.length];
+    private final Collection<BarcodeFormat> mPinnedFormats;
+    private final int mRareInterval;
+
+    /**
+     * @param formats       The enabled formats; null or empty means every
+     *                      format. They all start out warm, so that each is
+     *                      tried on every frame until it has had a chance.
+     * @param pinnedFormats Formats that are never throttled.
+     * @param rareInterval  Cold formats are only tried on every Nth frame.
+     */
+    FormatScheduler(Collection<BarcodeFormat> formats, Collection<BarcodeFormat> pinnedFormats, int rareInterval) {
+        if (rareInterval < 1) {
+            throw new IllegalArgumentException("rareInterval must be at least 1: " + rareInterval);
+        }
+        for (BarcodeFormat format : FORMATS) {
+            if (formats == null || formats.isEmpty() || formats.contains(format)) {
+                mScores[format.ordinal()] = 1.0f;
+            }
+        }
+        this.mPinnedFormats = pinnedFormats == null || pinnedFormats.isEmpty()
+                ? EnumSet.noneOf(BarcodeFormat.class) : EnumSet.copyOf(pinnedFormats);
+        this.mRareInterval = rareInterval;
+    }
+
+    /**
+     * Records the outcome of one frame.
+     *
+     * @param hit The format found, or null if nothing was.
+     */
+    synchronized void record(BarcodeFormat hit) {
+        float[] scores = mScores;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] *= DECAY;
+        }
+        if (hit != null) {
+            int i = hit.ordinal();
+            scores[i] = Math.min(MAX_SCORE, scores[i] + 1.0f);
+        }
+    }
+
+    /**
+     * Copies the current scores, indexed by {@link BarcodeFormat#ordinal()}.
+     */
+    synchronized void copyScores(float[] out) {
+        System.arraycopy(mScores, 0, out, 0, mScores.length);
+    }
+
+    synchronized float getScore(BarcodeFormat format) {
+        return mScores[format.ordinal()];
+    }
+
+    boolean isPinned(BarcodeFormat format) {
+        return mPinnedFormats.contains(format);
+    }
+
+    int getRareInterval() {
+        return mRareInterval;
+    }
+}
@@ -0,0 +1,145 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A cheap check run on the framing rect before it is binarized and decoded.
+ * It samples a fixed grid of points, whatever the size of the rect, and
+ * computes the mean brightness, the contrast (standard deviation) and the
+ * sharpness (gradient energy to neighbouring pixels, relative to the
+ * variance, so that it doesn't depend on the lighting). Frames which are too
+ * dark, too bright, flat or blurred are not worth a decode attempt. <br/>
+ * <br/>
+ *
+ * 解碼前的幀質量檢查：在掃描框內取固定數量的格點，計算亮度均值、對比度和清晰度，
+ * 過暗、過亮、無對比或模糊的幀直接丟棄。該類不是線程安全的，每個解碼線程持有一個實例。
+ */
+public final class FrameQualityGate {
+    private static final String TAG = FrameQualityGate.class.getSimpleName();
+
+    /**
+     * 每個方向的取樣數，共GRID * GRID個點
+     */
+    private static final int GRID = 24;
+
+    public static final int DEFAULT_MIN_MEAN = 20;
+    public static final int DEFAULT_MAX_MEAN = 240;
+    public static final float DEFAULT_MIN_CONTRAST = 12.0f;
+
+    /**
+     * 清晰的條碼在0.1以上，失焦時邊緣被拉寬到數個像素，降到0.03左右
+     */
+    public static final float DEFAULT_MIN_SHARPNESS = 0.05f;
+
+    public enum Verdict {
+        ACCEPT,
+        TOO_DARK,
+        TOO_BRIGHT,
+        /**
+         * 畫面平坦，或嚴重失焦
+         */
+        LOW_CONTRAST,
+        BLURRY;
+
+        /**
+         * 是否值得重新對焦
+         */
+        public boolean isOutOfFocus() {
+            return this == LOW_CONTRAST || this == BLURRY;
+        }
+    }
+
+    private final int mMinMean;
+    private final int mMaxMean;
+    private final float mMinContrast;
+    private final float mMinSharpness;
+
+    private byte[] mRow;
+    private byte[] mNextRow;
+    private float mMean;
+    private float mContrast;
+    private float mSharpness;
+
+    public FrameQualityGate() {
+        this(DEFAULT_MIN_MEAN, DEFAULT_MAX_MEAN, DEFAULT_MIN_CONTRAST, DEFAULT_MIN_SHARPNESS);
+    }
+
+    public FrameQualityGate(int minMean, int maxMean, float minContrast, float minSharpness) {
+        this.mMinMean = minMean;
+        this.mMaxMean = maxMean;
+        this.mMinContrast = minContrast;
+        this.mMinSharpness = minSharpness;
+    }
+
+    /**
+     * Scores the source and tells whether it is worth decoding. The scores
+     * stay readable through the getters until the next call.
+     */
+    public Verdict evaluate(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < 2 || height < 2) {
+            mMean = 0;
+            mContrast = 0;
+            mSharpness = 0;
+            return Verdict.LOW_CONTRAST;
+        }
+        if (mRow == null || mRow.length < width) {
+            mRow = new byte[width];
+            mNextRow = new byte[width];
+        }
+        int rows = Math.min(GRID, height - 1);
+        int columns = Math.min(GRID, width - 1);
+        long sum = 0;
+        long sumOfSquares = 0;
+        long gradientEnergy = 0;
+        for (int i = 0; i < rows; i++) {
+            // 取樣點及其右方、下方的鄰點
+            int y = rows == 1 ? 0 : i * (height - 2) / (rows - 1);
+            byte[] row = source.getRow(y, mRow);
+            byte[] next = source.getRow(y + 1, mNextRow);
+            for (int j = 0; j < columns; j++) {
+                int x = columns == 1 ? 0 : j * (width - 2) / (columns - 1);
+                int value = row[x] & 0xff;
+                int dx = (row[x + 1] & 0xff) - value;
+                int dy = (next[x] & 0xff) - value;
+                sum += value;
+                sumOfSquares += value * value;
+                gradientEnergy += dx * dx + dy * dy;
+            }
+        }
+        int count = rows * columns;
+        float mean = (float) sum / count;
+        float variance = Math.max(0f, (float) sumOfSquares / count - mean * mean);
+        mMean = mean;
+        mContrast = (float) Math.sqrt(variance);
+        // 每個方向一個梯度，取平均後除以方差
+        mSharpness = variance == 0f ? 0f : gradientEnergy / (2f * count) / variance;
+
+        if (mean < mMinMean) {
+            return Verdict.TOO_DARK;
+        }
+        if (mean > mMaxMean) {
+            return Verdict.TOO_BRIGHT;
+        }
+        if (mContrast < mMinContrast) {
+            return Verdict.LOW_CONTRAST;
+        }
+        if (mSharpness < mMinSharpness) {
+            return Verdict.BLURRY;
+        }
+        return Verdict.ACCEPT;
+    }
+
+    public float getMean() {
+        return mMean;
+    }
+
+    public float getContrast() {
+        return mContrast;
+    }
+
+    public float getSharpness() {
+        return mSharpness;
+    }
+}
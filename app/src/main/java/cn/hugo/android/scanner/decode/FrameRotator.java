@@ -0,0 +1,210 @@
+package cn.hugo.android.scanner.decode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rotates and crops the luminance (Y) plane of a preview frame into a buffer
+ * which is reused from one frame to the next. Only the pixels inside the
+ * requested region are read, so the part of the frame outside the framing
+ * rect is never touched. <br/>
+ * <br/>
+ *
+ * 只把掃描框內的區域旋轉到可重複使用的緩衝區，不再每一幀都分配並旋轉整個預覽幀。
+ * 該類不是線程安全的，每個解碼線程持有一個實例。
+ */
+public final class FrameRotator {
+    private static final String TAG = FrameRotator.class.getSimpleName();
+
+    /**
+     * 重複使用的輸出緩衝區，大小只在掃描框改變時才重新分配
+     */
+    private byte[] mBuffer;
+
+    /**
+     * 從ByteBuffer批量讀取一行源資料用的暫存區
+     */
+    private byte[] mRowBuffer;
+
+    /**
+     * Rotates the frame clockwise by {@code rotation} degrees and copies the
+     * region {@code (left, top, width, height)} of the rotated image into the
+     * pooled buffer. The region is expressed in rotated coordinates, i.e. the
+     * same coordinates as {@code CameraManager.getFramingRectInPreview()}.
+     *
+     * @param data       The YUV preview frame, luminance plane first.
+     * @param dataWidth  The width of the preview frame.
+     * @param dataHeight The height of the preview frame.
+     * @param rotation   Clockwise rotation: 0, 90, 180 or 270.
+     * @return A buffer holding {@code width * height} luminance bytes, row by
+     * row. It is only valid until the next call.
+     */
+    public byte[] rotateAndCrop(byte[] data, int dataWidth, int dataHeight, int rotation,
+                                int left, int top, int width, int height) {
+        rotation = normalizeRotation(rotation);
+        boolean swapped = rotation == 90 || rotation == 270;
+        int rotatedWidth = swapped ? dataHeight : dataWidth;
+        int rotatedHeight = swapped ? dataWidth : dataHeight;
+        if (left < 0 || top < 0 || width <= 0 || height <= 0
+                || left + width > rotatedWidth || top + height > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        int size = width * height;
+        byte[] out = mBuffer;
+        if (out == null || out.length != size) {
+            out = new byte[size];
+            mBuffer = out;
+        }
+
+        switch (rotation) {
+            case 0:
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(data, (top + y) * dataWidth + left, out, y * width, width);
+                }
+                break;
+            case 90:
+                // rotated(rx, ry) = source(ry, dataHeight - 1 - rx)
+                // 按源資料的行順序讀取，寫入時跨越輸出的行
+                for (int sy = dataHeight - left - width; sy < dataHeight - left; sy++) {
+                    int src = sy * dataWidth + top;
+                    int dst = dataHeight - 1 - sy - left;
+                    for (int i = 0; i < height; i++) {
+                        out[dst] = data[src++];
+                        dst += width;
+                    }
+                }
+                break;
+            case 180:
+                // rotated(rx, ry) = source(dataWidth - 1 - rx, dataHeight - 1 - ry)
+                for (int y = 0; y < height; y++) {
+                    int src = (dataHeight - 1 - top - y) * dataWidth + dataWidth - 1 - left;
+                    int dst = y * width;
+                    for (int x = 0; x < width; x++) {
+                        out[dst++] = data[src--];
+                    }
+                }
+                break;
+            default: // 270
+                // rotated(rx, ry) = source(dataWidth - 1 - ry, rx)
+                for (int sy = left; sy < left + width; sy++) {
+                    int src = sy * dataWidth + dataWidth - top - height;
+                    int dst = (height - 1) * width + sy - left;
+                    for (int i = 0; i < height; i++) {
+                        out[dst] = data[src++];
+                        dst -= width;
+                    }
+                }
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * Like {@link #rotateAndCrop(byte[], int, int, int, int, int, int, int)},
+     * for a luminance plane read through a buffer with the given row and
+     * pixel stride. Every source row the region covers is read with one bulk
+     * get, then scattered into place.
+     *
+     * @param plane Not modified; read through a duplicate.
+     */
+    public byte[] rotateAndCrop(ByteBuffer plane, int rowStride, int pixelStride, int dataWidth, int dataHeight,
+                                int rotation, int left, int top, int width, int height) {
+        rotation = normalizeRotation(rotation);
+        boolean swapped = rotation == 90 || rotation == 270;
+        int rotatedWidth = swapped ? dataHeight : dataWidth;
+        int rotatedHeight = swapped ? dataWidth : dataHeight;
+        if (left < 0 || top < 0 || width <= 0 || height <= 0
+                || left + width > rotatedWidth || top + height > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        int size = width * height;
+        byte[] out = mBuffer;
+        if (out == null || out.length != size) {
+            out = new byte[size];
+            mBuffer = out;
+        }
+
+        // 區域在源資料中的範圍
+        int sourceLeft;
+        int sourceTop;
+        switch (rotation) {
+            case 0:
+                sourceLeft = left;
+                sourceTop = top;
+                break;
+            case 90:
+                sourceLeft = top;
+                sourceTop = dataHeight - left - width;
+                break;
+            case 180:
+                sourceLeft = dataWidth - left - width;
+                sourceTop = dataHeight - top - height;
+                break;
+            default: // 270
+                sourceLeft = dataWidth - top - height;
+                sourceTop = left;
+                break;
+        }
+        int sourceWidth = swapped ? height : width;
+        int sourceHeight = swapped ? width : height;
+
+        ByteBuffer view = plane.duplicate();
+        if (rotation == 0 && pixelStride == 1) {
+            // 不需要重排，直接讀入輸出緩衝區
+            for (int y = 0; y < height; y++) {
+                view.position((top + y) * rowStride + left);
+                view.get(out, y * width, width);
+            }
+            return out;
+        }
+
+        int span = (sourceWidth - 1) * pixelStride + 1;
+        byte[] row = mRowBuffer;
+        if (row == null || row.length < span) {
+            row = new byte[span];
+            mRowBuffer = row;
+        }
+        for (int sy = sourceTop; sy < sourceTop + sourceHeight; sy++) {
+            view.position(sy * rowStride + sourceLeft * pixelStride);
+            view.get(row, 0, span);
+            // 源資料一行在輸出中的起點和步長
+            int dst;
+            int step;
+            switch (rotation) {
+                case 0:
+                    dst = (sy - top) * width;
+                    step = 1;
+                    break;
+                case 90:
+                    // rotated(rx, ry) = source(ry, dataHeight - 1 - rx)
+                    dst = dataHeight - 1 - sy - left;
+                    step = width;
+                    break;
+                case 180:
+                    // rotated(rx, ry) = source(dataWidth - 1 - rx, dataHeight - 1 - ry)
+                    dst = (dataHeight - 1 - sy - top) * width + width - 1;
+                    step = -1;
+                    break;
+                default: // 270
+                    // rotated(rx, ry) = source(dataWidth - 1 - ry, rx)
+                    dst = (height - 1) * width + sy - left;
+                    step = -width;
+                    break;
+            }
+            for (int i = 0, src = 0; i < sourceWidth; i++, src += pixelStride) {
+                out[dst] = row[src];
+                dst += step;
+            }
+        }
+        return out;
+    }
+
+    private static int normalizeRotation(int rotation) {
+        int normalized = ((rotation % 360) + 360) % 360;
+        if (normalized % 90 != 0) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,178 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds every barcode in a frame, up to a cap. QR codes come from one pass of
+ * {@link QRCodeMultiReader}; the other formats from
+ * {@link GenericMultipleBarcodeReader}, which keeps decoding the parts of the
+ * image around each hit. Once the cap is reached the remaining attempts fail
+ * at once, which bounds the work per frame. Hits are de-duplicated by text
+ * and position. Not thread safe; every decode worker has its own. <br/>
+ * <br/>
+ *
+ * 一幀中識別多個條碼：二維碼用QRCodeMultiReader一次找出，其他格式用GenericMultipleBarcodeReader，
+ * 達到上限後不再繼續嘗試
+ */
+final class MultiBarcodeReader {
+    private static final String TAG = MultiBarcodeReader.class.getSimpleName();
+
+    /**
+     * 位置相距不超過此像素數的相同內容視為同一個條碼
+     */
+    private static final float MERGE_DISTANCE = 32.0f;
+
+    private final int mMaxResults;
+    private final Map<DecodeHintType, ?> mHints;
+    private final QRCodeMultiReader mQrReader;
+    private final CappedReader mOtherReader;
+    private final GenericMultipleBarcodeReader mGenericReader;
+    private final boolean mNeedsBlackMatrix;
+    private final Collection<BarcodeFormat> mFormats;
+
+    /**
+     * @param hints      The decode hints; POSSIBLE_FORMATS selects the
+     *                   readers, null or empty means all of them.
+     * @param maxResults 每幀最多識別的條碼數
+     */
+    @SuppressWarnings("unchecked")
+    MultiBarcodeReader(Map<DecodeHintType, ?> hints, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be at least 1: " + maxResults);
+        }
+        this.mMaxResults = maxResults;
+        this.mHints = hints;
+        Collection<BarcodeFormat> formats = hints == null ? null : (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+        boolean all = formats == null || formats.isEmpty();
+        mFormats = formats;
+        EnumSet<BarcodeFormat> others = all ? EnumSet.allOf(BarcodeFormat.class) : EnumSet.copyOf(formats);
+        boolean qr = others.remove(BarcodeFormat.QR_CODE);
+        mQrReader = qr ? new QRCodeMultiReader() : null;
+        if (others.isEmpty()) {
+            mOtherReader = null;
+            mGenericReader = null;
+        } else {
+            Map<DecodeHintType, Object> otherHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+            if (hints != null) {
+                otherHints.putAll(hints);
+            }
+            otherHints.put(DecodeHintType.POSSIBLE_FORMATS, others);
+            MultiFormatReader reader = new MultiFormatReader();
+            reader.setHints(otherHints);
+            mOtherReader = new CappedReader(reader);
+            mGenericReader = new GenericMultipleBarcodeReader(mOtherReader);
+        }
+        others.removeAll(DecodeFormatManager.ONE_D_FORMATS);
+        mNeedsBlackMatrix = qr || !others.isEmpty();
+    }
+
+    /**
+     * @return true if any of the readers is not a 1D reader.
+     */
+    boolean needsBlackMatrix() {
+        return mNeedsBlackMatrix;
+    }
+
+    /**
+     * The formats looked for; null or empty means every format.
+     */
+    Collection<BarcodeFormat> getFormats() {
+        return mFormats;
+    }
+
+    /**
+     * @return The distinct barcodes found, at most maxResults of them, or
+     * an empty list.
+     */
+    List<Result> decode(BinaryBitmap image) {
+        ResultMerger merger = new ResultMerger(MERGE_DISTANCE);
+        if (mQrReader != null) {
+            try {
+                for (Result result : mQrReader.decodeMultiple(image, mHints)) {
+                    if (merger.size() < mMaxResults) {
+                        merger.add(result);
+                    }
+                }
+            } catch (NotFoundException e) {
+                // continue
+            }
+        }
+        if (mGenericReader != null && merger.size() < mMaxResults) {
+            mOtherReader.begin(mMaxResults - merger.size());
+            try {
+                for (Result result : mGenericReader.decodeMultiple(image, mHints)) {
+                    if (merger.size() < mMaxResults) {
+                        merger.add(result);
+                    }
+                }
+            } catch (NotFoundException e) {
+                // continue
+            }
+        }
+        return merger.getResults();
+    }
+
+    void reset() {
+        if (mQrReader != null) {
+            mQrReader.reset();
+        }
+        if (mOtherReader != null) {
+            mOtherReader.reset();
+        }
+    }
+
+    /**
+     * Fails every attempt once the remaining budget of hits is used up, so
+     * GenericMultipleBarcodeReader stops recursing into sub-images. Decodes
+     * with the reader's own hints, not the ones passed down, which still
+     * include QR_CODE.
+     */
+    private static final class CappedReader implements Reader {
+        private final MultiFormatReader mDelegate;
+        private int mRemaining;
+
+        CappedReader(MultiFormatReader delegate) {
+            this.mDelegate = delegate;
+        }
+
+        void begin(int remaining) {
+            mRemaining = remaining;
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image) throws NotFoundException, ChecksumException, FormatException {
+            return decode(image, null);
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException, ChecksumException, FormatException {
+            if (mRemaining <= 0) {
+                throw NotFoundException.getNotFoundInstance();
+            }
+            Result result = mDelegate.decodeWithState(image);
+            mRemaining--;
+            return result;
+        }
+
+        @Override
+        public void reset() {
+            mDelegate.reset();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cn.hugo.android.scanner.decode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results seen in the last {@code windowMs}, at most
+ * {@code capacity} of them, least recently seen dropped first. Used by bulk
+ * mode to report a barcode once while it stays in front of the camera: each
+ * sighting restarts its window. Not thread safe. <br/>
+ * <br/>
+ *
+ * 連續掃描模式的去重緩存：時間窗口內見過的結果不再回調，每次再見到都會重新計時
+ */
+final class RecentResultCache {
+    private static final String TAG = RecentResultCache.class.getSimpleName();
+
+    private final long mWindowMs;
+    private final int mCapacity;
+
+    /**
+     * 按最近見到的順序排列，值為最後一次見到的時間
+     */
+    private final LinkedHashMap<String, Long> mLastSeen;
+
+    RecentResultCache(long windowMs, int capacity) {
+        if (windowMs <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Bad cache: window " + windowMs + " ms, capacity " + capacity);
+        }
+        this.mWindowMs = windowMs;
+        this.mCapacity = capacity;
+        this.mLastSeen = new LinkedHashMap<String, Long>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /**
+     * Records a sighting of {@code key}.
+     *
+     * @return true if it was already seen within the window.
+     */
+    boolean isDuplicate(String key, long nowMs) {
+        expire(nowMs);
+        Long last = mLastSeen.put(key, nowMs);
+        return last != null;
+    }
+
+    void clear() {
+        mLastSeen.clear();
+    }
+
+    int size() {
+        return mLastSeen.size();
+    }
+
+    private void expire(long nowMs) {
+        // 最久沒見到的在最前面
+        Iterator<Long> it = mLastSeen.values().iterator();
+        while (it.hasNext()) {
+            if (nowMs - it.next() < mWindowMs) {
+                break;
+            }
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects results found in parts of one image (tiles, crops) and drops the
+ * duplicates: the same format and text found again within
+ * {@code mergeDistance} of an earlier hit. The same content further away
+ * counts as another barcode. Not thread safe. <br/>
+ * <br/>
+ *
+ * 合併同一張圖不同區域中的解碼結果：格式和內容相同、位置相近的視為同一個條碼
+ */
+final class ResultMerger {
+    private static final String TAG = ResultMerger.class.getSimpleName();
+
+    private final float mMergeDistance;
+    private final List<Result> mResults = new ArrayList<Result>();
+
+    ResultMerger(float mergeDistance) {
+        this.mMergeDistance = mergeDistance;
+    }
+
+    /**
+     * @return false if the result duplicates one added earlier.
+     */
+    boolean add(Result result) {
+        for (Result known : mResults) {
+            if (isDuplicate(known, result)) {
+                return false;
+            }
+        }
+        mResults.add(result);
+        return true;
+    }
+
+    List<Result> getResults() {
+        return mResults;
+    }
+
+    int size() {
+        return mResults.size();
+    }
+
+    private boolean isDuplicate(Result a, Result b) {
+        if (a.getBarcodeFormat() != b.getBarcodeFormat() || !a.getText().equals(b.getText())) {
+            return false;
+        }
+        float[] ca = center(a);
+        float[] cb = center(b);
+        if (ca == null || cb == null) {
+            // 沒有位置資訊時只按內容判斷
+            return true;
+        }
+        float dx = ca[0] - cb[0];
+        float dy = ca[1] - cb[1];
+        return dx * dx + dy * dy <= mMergeDistance * mMergeDistance;
+    }
+
+    private static float[] center(Result result) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null) {
+            return null;
+        }
+        float x = 0.0f;
+        float y = 0.0f;
+        int count = 0;
+        for (ResultPoint point : points) {
+            if (point != null) {
+                x += point.getX();
+                y += point.getY();
+                count++;
+            }
+        }
+        return count == 0 ? null : new float[]{x / count, y / count};
+    }
+
+    /**
+     * A copy of the result with its points moved by (dx, dy), e.g. from tile
+     * to image coordinates.
+     */
+    static Result translate(Result result, int dx, int dy) {
+        ResultPoint[] points = result.getResultPoints();
+        ResultPoint[] translated = null;
+        if (points != null) {
+            translated = new ResultPoint[points.length];
+            for (int i = 0; i < points.length; i++) {
+                translated[i] = points[i] == null ? null : new ResultPoint(points[i].getX() + dx, points[i].getY() + dy);
+            }
+        }
+        Result moved = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), translated,
+                result.getBarcodeFormat(), result.getTimestamp());
+        moved.putAllMetadata(result.getResultMetadata());
+        return moved;
+    }
+}
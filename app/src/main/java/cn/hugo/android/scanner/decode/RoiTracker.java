@@ -0,0 +1,125 @@
+package cn.hugo.android.scanner.decode;
+
+/**
+ * Tracks where in the framing rect the readers keep finding candidate
+ * {@link com.google.zxing.ResultPoint}s (finder patterns, guard patterns) and
+ * narrows the region the next frames are decoded on to a square around that
+ * cluster. After {@code maxMisses} frames in a row without a cluster it goes
+ * back to the full framing rect. Coordinates are relative to the framing
+ * rect, like the points the readers report. Shared by all decode workers.
+ * <br/>
+ * <br/>
+ *
+ * 根據最近一幀的候選點（定位圖形等）縮小下一幀的解碼區域，連續若干幀沒有找到候選點時恢復整個掃描框
+ */
+final class RoiTracker {
+    private static final String TAG = RoiTracker.class.getSimpleName();
+
+    static final int DEFAULT_MAX_MISSES = 3;
+
+    /**
+     * 少於這個數量的候選點不算聚集
+     */
+    static final int MIN_POINTS = 2;
+
+    /**
+     * 二維碼的定位圖形中心距碼邊緣約3.5個模組，再加上靜區，碼的實際邊長約為定位點跨度的兩倍
+     */
+    private static final float EXPANSION = 2.2f;
+
+    /**
+     * 區域邊長按掃描框短邊的1/8取整，避免每幀尺寸都不同導致矩陣緩衝區反覆重新分配
+     */
+    private static final int SIZE_STEPS = 8;
+
+    /**
+     * 區域邊長至少為掃描框短邊的STEPS_MIN/SIZE_STEPS
+     */
+    private static final int STEPS_MIN = 3;
+
+    private final int mMaxMisses;
+    private boolean mTracking;
+    private int mLeft;
+    private int mTop;
+    private int mSize;
+    private int mMisses;
+
+    RoiTracker(int maxMisses) {
+        if (maxMisses < 1) {
+            throw new IllegalArgumentException("maxMisses must be at least 1: " + maxMisses);
+        }
+        this.mMaxMisses = maxMisses;
+    }
+
+    /**
+     * Fills {@code out} with {left, top, width, height} of the region to
+     * decode, relative to a framing rect of the given size.
+     *
+     * @return true if the region is narrower than the framing rect.
+     */
+    synchronized boolean region(int fullWidth, int fullHeight, int[] out) {
+        if (mTracking && mLeft + mSize <= fullWidth && mTop + mSize <= fullHeight) {
+            out[0] = mLeft;
+            out[1] = mTop;
+            out[2] = mSize;
+            out[3] = mSize;
+            return true;
+        }
+        out[0] = 0;
+        out[1] = 0;
+        out[2] = fullWidth;
+        out[3] = fullHeight;
+        return false;
+    }
+
+    /**
+     * Feeds the candidate points one frame produced, in framing rect
+     * coordinates.
+     */
+    synchronized void update(int fullWidth, int fullHeight, float[] xs, float[] ys, int count) {
+        if (count < MIN_POINTS) {
+            if (++mMisses >= mMaxMisses) {
+                mTracking = false;
+            }
+            return;
+        }
+        float minX = xs[0];
+        float maxX = xs[0];
+        float minY = ys[0];
+        float maxY = ys[0];
+        for (int i = 1; i < count; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        mMisses = 0;
+
+        int shortSide = Math.min(fullWidth, fullHeight);
+        int step = Math.max(1, shortSide / SIZE_STEPS);
+        int size = (int) (Math.max(maxX - minX, maxY - minY) * EXPANSION);
+        size = Math.max(size, step * STEPS_MIN);
+        size = (size + step - 1) / step * step;
+        if (size >= shortSide) {
+            // 聚集範圍已接近整個掃描框，裁剪沒有意義
+            mTracking = false;
+            return;
+        }
+        int centerX = (int) ((minX + maxX) / 2);
+        int centerY = (int) ((minY + maxY) / 2);
+        // 超出掃描框時平移而不是縮小
+        mLeft = clamp(centerX - size / 2, 0, fullWidth - size);
+        mTop = clamp(centerY - size / 2, 0, fullHeight - size);
+        mSize = size;
+        mTracking = true;
+    }
+
+    synchronized void reset() {
+        mTracking = false;
+        mMisses = 0;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
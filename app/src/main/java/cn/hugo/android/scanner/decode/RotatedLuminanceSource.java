@@ -0,0 +1,187 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A rotated and cropped view over the luminance plane of an NV21 preview
+ * frame. {@link #getRow(int, byte[])} reads the source frame directly, so the
+ * 1D readers never cause a copy of the frame; {@link #getMatrix()}
+ * materializes only the cropped region, once per source. <br/>
+ * <br/>
+ *
+ * 預覽幀亮度平面的旋轉、裁剪視圖：getRow直接讀取原始幀，getMatrix只生成掃描框區域且只生成一次，
+ * 不再需要先把整幀旋轉一遍
+ */
+public final class RotatedLuminanceSource extends LuminanceSource {
+    private static final String TAG = RotatedLuminanceSource.class.getSimpleName();
+    private static final int THUMBNAIL_SCALE_FACTOR = 2;
+
+    private final byte[] mYuvData;
+    private final int mDataWidth;
+    private final int mDataHeight;
+    private final int mRotation;
+    private final int mLeft;
+    private final int mTop;
+    private final FrameRotator mMatrixRotator;
+    private byte[] mMatrix;
+
+    /**
+     * @param yuvData       The preview frame, luminance plane first.
+     * @param rotation      Clockwise rotation of the view: 0, 90, 180 or 270.
+     * @param left          The crop, in rotated coordinates.
+     * @param matrixRotator Supplies the (reused) buffer {@link #getMatrix()}
+     *                      is materialized into; null allocates a new one.
+     */
+    public RotatedLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int rotation,
+                                  int left, int top, int width, int height, FrameRotator matrixRotator) {
+        super(width, height);
+        rotation = ((rotation % 360) + 360) % 360;
+        if (rotation % 90 != 0) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+        boolean swapped = rotation == 90 || rotation == 270;
+        int rotatedWidth = swapped ? dataHeight : dataWidth;
+        int rotatedHeight = swapped ? dataWidth : dataHeight;
+        if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        this.mYuvData = yuvData;
+        this.mDataWidth = dataWidth;
+        this.mDataHeight = dataHeight;
+        this.mRotation = rotation;
+        this.mLeft = left;
+        this.mTop = top;
+        this.mMatrixRotator = matrixRotator;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        int ry = mTop + y;
+        // 旋轉後的一行對應原始幀的一行或一列，按步長直接讀取
+        int offset;
+        int step;
+        switch (mRotation) {
+            case 0:
+                System.arraycopy(mYuvData, ry * mDataWidth + mLeft, row, 0, width);
+                return row;
+            case 90:
+                // rotated(rx, ry) = source(ry, dataHeight - 1 - rx)
+                offset = (mDataHeight - 1 - mLeft) * mDataWidth + ry;
+                step = -mDataWidth;
+                break;
+            case 180:
+                // rotated(rx, ry) = source(dataWidth - 1 - rx, dataHeight - 1 - ry)
+                offset = (mDataHeight - 1 - ry) * mDataWidth + mDataWidth - 1 - mLeft;
+                step = -1;
+                break;
+            default: // 270
+                // rotated(rx, ry) = source(dataWidth - 1 - ry, rx)
+                offset = mLeft * mDataWidth + mDataWidth - 1 - ry;
+                step = mDataWidth;
+                break;
+        }
+        for (int x = 0; x < width; x++) {
+            row[x] = mYuvData[offset];
+            offset += step;
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        byte[] matrix = mMatrix;
+        if (matrix == null) {
+            FrameRotator rotator = mMatrixRotator != null ? mMatrixRotator : new FrameRotator();
+            matrix = rotator.rotateAndCrop(mYuvData, mDataWidth, mDataHeight, mRotation, mLeft, mTop, getWidth(), getHeight());
+            mMatrix = matrix;
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new RotatedLuminanceSource(mYuvData, mDataWidth, mDataHeight, mRotation,
+                mLeft + left, mTop + top, width, height, null);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        // 逆時針轉90度等於順時針轉270度，裁剪區域隨之旋轉
+        boolean swapped = mRotation == 90 || mRotation == 270;
+        int rotatedWidth = swapped ? mDataHeight : mDataWidth;
+        return new RotatedLuminanceSource(mYuvData, mDataWidth, mDataHeight, mRotation + 270,
+                mTop, rotatedWidth - mLeft - getWidth(), getHeight(), getWidth(), null);
+    }
+
+    /**
+     * Renders the view as greyscale ARGB pixels, scaled down by half, like
+     * {@link com.google.zxing.PlanarYUVLuminanceSource#renderThumbnail()}.
+     */
+    public int[] renderThumbnail() {
+        return renderThumbnail(new int[getThumbnailWidth() * getThumbnailHeight()]);
+    }
+
+    /**
+     * Like {@link #renderThumbnail()}, into the given array.
+     *
+     * @param pixels At least {@link #getThumbnailWidth()} *
+     *               {@link #getThumbnailHeight()} long.
+     */
+    public int[] renderThumbnail(int[] pixels) {
+        return renderThumbnail(this, pixels);
+    }
+
+    public int getThumbnailWidth() {
+        return getThumbnailWidth(this);
+    }
+
+    public int getThumbnailHeight() {
+        return getThumbnailHeight(this);
+    }
+
+    /**
+     * Renders any source as greyscale ARGB pixels, scaled down by half, row
+     * by row.
+     *
+     * @param pixels At least {@link #getThumbnailWidth(LuminanceSource)} *
+     *               {@link #getThumbnailHeight(LuminanceSource)} long.
+     */
+    static int[] renderThumbnail(LuminanceSource source, int[] pixels) {
+        int width = getThumbnailWidth(source);
+        int height = getThumbnailHeight(source);
+        byte[] row = new byte[source.getWidth()];
+        for (int y = 0; y < height; y++) {
+            source.getRow(y * THUMBNAIL_SCALE_FACTOR, row);
+            for (int x = 0; x < width; x++) {
+                int grey = row[x * THUMBNAIL_SCALE_FACTOR] & 0xff;
+                pixels[y * width + x] = 0xFF000000 | (grey * 0x00010101);
+            }
+        }
+        return pixels;
+    }
+
+    static int getThumbnailWidth(LuminanceSource source) {
+        return source.getWidth() / THUMBNAIL_SCALE_FACTOR;
+    }
+
+    static int getThumbnailHeight(LuminanceSource source) {
+        return source.getHeight() / THUMBNAIL_SCALE_FACTOR;
+    }
+}
@@ -0,0 +1,140 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Decides whether a frame differs enough from the last decoded one to be
+ * worth decoding. Each frame is reduced to a tiny signature, the average
+ * luminance of {@link #SIGNATURE_SIZE} x {@link #SIGNATURE_SIZE} blocks of the
+ * region. Frames whose signature matches the last decoded frame's, after
+ * removing a global brightness shift (auto exposure), are skipped. Every
+ * {@code refreshMs} a frame is decoded anyway, so a slow change is never
+ * missed for long. A focus run of the camera also drops the reference, as
+ * refocusing barely changes the block averages while it may turn a blurred
+ * barcode into a readable one. Shared by all decode workers. <br/>
+ * <br/>
+ *
+ * 畫面沒有變化時跳過解碼：比較每幀的縮略亮度簽名與上一次解碼的幀，差異不大時跳過，每隔一段時間仍強制解碼一次
+ */
+final class SceneChangeDetector {
+    private static final String TAG = SceneChangeDetector.class.getSimpleName();
+
+    /**
+     * 簽名每個方向的分塊數
+     */
+    static final int SIGNATURE_SIZE = 16;
+
+    static final long DEFAULT_REFRESH_MS = 1000L;
+
+    /**
+     * 各分塊與參考簽名的平均差異（去除整體亮度變化後）超過此值才算畫面變化
+     */
+    static final int DEFAULT_MIN_CHANGE = 4;
+
+    private final long mRefreshMs;
+    private final int mMinChange;
+
+    /**
+     * 上一次解碼的幀的簽名，為null時下一幀一定解碼
+     */
+    private int[] mReference;
+    private long mReferenceTime;
+
+    /**
+     * 上一次看到的相機對焦次數
+     */
+    private int mFocusCount;
+
+    SceneChangeDetector(long refreshMs, int minChange) {
+        this.mRefreshMs = refreshMs;
+        this.mMinChange = minChange;
+    }
+
+    /**
+     * Computes the signature of the source into {@code out}, which is at
+     * least SIGNATURE_SIZE * SIGNATURE_SIZE long. Reads SIGNATURE_SIZE rows;
+     * each block value averages its share of one row.
+     *
+     * @param row Scratch row buffer, may be null.
+     * @return The row buffer used, for reuse.
+     */
+    static byte[] signature(LuminanceSource source, int[] out, byte[] row) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            row = source.getRow((2 * i + 1) * height / (2 * SIGNATURE_SIZE), row);
+            for (int j = 0; j < SIGNATURE_SIZE; j++) {
+                int from = j * width / SIGNATURE_SIZE;
+                int to = Math.max(from + 1, (j + 1) * width / SIGNATURE_SIZE);
+                int sum = 0;
+                for (int x = from; x < to; x++) {
+                    sum += row[x] & 0xff;
+                }
+                out[i * SIGNATURE_SIZE + j] = sum / (to - from);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return false if the frame looks like the last decoded one and the
+     * refresh interval has not passed yet.
+     */
+    synchronized boolean shouldDecode(int[] signature, long nowMs) {
+        if (mReference == null || nowMs - mReferenceTime >= mRefreshMs) {
+            return true;
+        }
+        return difference(mReference, signature) > mMinChange;
+    }
+
+    /**
+     * Makes the frame the new reference, once it has actually been decoded.
+     * A frame the quality gate turned down is not marked, so that the next
+     * sharp frame of the same scene is still decoded.
+     */
+    synchronized void markDecoded(int[] signature, long nowMs) {
+        if (mReference == null) {
+            mReference = new int[SIGNATURE_SIZE * SIGNATURE_SIZE];
+        }
+        System.arraycopy(signature, 0, mReference, 0, mReference.length);
+        mReferenceTime = nowMs;
+    }
+
+    /**
+     * Forgets the reference if the camera has finished a focus run since the
+     * last call, so that the first frame after refocusing is decoded.
+     *
+     * @param focusCount {@link cn.hugo.android.scanner.camera.CameraManager#getFocusCount()}
+     */
+    synchronized void onFocusCount(int focusCount) {
+        if (focusCount != mFocusCount) {
+            mFocusCount = focusCount;
+            mReference = null;
+        }
+    }
+
+    /**
+     * Forgets the reference, e.g. when scanning restarts after a result.
+     */
+    synchronized void reset() {
+        mReference = null;
+    }
+
+    /**
+     * The mean absolute difference per block, after shifting b to the mean
+     * brightness of a.
+     */
+    static int difference(int[] a, int[] b) {
+        int count = SIGNATURE_SIZE * SIGNATURE_SIZE;
+        int shift = 0;
+        for (int i = 0; i < count; i++) {
+            shift += a[i] - b[i];
+        }
+        shift /= count;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += Math.abs(a[i] - b[i] - shift);
+        }
+        return total / count;
+    }
+}
@@ -0,0 +1,219 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * A replacement for {@link com.google.zxing.MultiFormatReader} on preview
+ * frames. It runs the same readers, but orders them by how often their
+ * formats were found recently ({@link FormatScheduler}), and tries readers
+ * whose formats have gone cold only on every Nth frame. Like
+ * MultiFormatReader it stops at the first reader that finds something. Not
+ * thread safe; every decode worker has its own. <br/>
+ * <br/>
+ *
+ * 按最近命中率排序讀取器，冷門格式每N幀才嘗試一次，一維碼為主的場景下不必每幀都做二維碼檢測
+ */
+final class ScheduledFormatReader {
+    private static final String TAG = ScheduledFormatReader.class.getSimpleName();
+
+    /**
+     * 與MultiFormatReader相同的讀取器劃分，一維格式共用一個讀取器以便逐行只掃描一次
+     */
+    private enum Group {
+        ONE_D(DecodeFormatManager.ONE_D_FORMATS),
+        QR_CODE(EnumSet.of(BarcodeFormat.QR_CODE)),
+        DATA_MATRIX(EnumSet.of(BarcodeFormat.DATA_MATRIX)),
+        AZTEC(EnumSet.of(BarcodeFormat.AZTEC)),
+        PDF_417(EnumSet.of(BarcodeFormat.PDF_417)),
+        MAXICODE(EnumSet.of(BarcodeFormat.MAXICODE));
+
+        final Collection<BarcodeFormat> formats;
+
+        Group(Collection<BarcodeFormat> formats) {
+            this.formats = formats;
+        }
+    }
+
+    private static final Group[] GROUPS = Group.values();
+
+    private final FormatScheduler mScheduler;
+    private final Map<DecodeHintType, ?> mHints;
+    private final Reader[] mReaders = new Reader[GROUPS.length];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final EnumSet<BarcodeFormat>[] mGroupFormats = new EnumSet[GROUPS.length];
+    private final boolean[] mPinned = new boolean[GROUPS.length];
+
+    private final float[] mFormatScores = new float[BarcodeFormat.values().length];
+    private final float[] mGroupScores = new float[GROUPS.length];
+
+    /**
+     * 每組中分數最高的格式的分數；判斷冷熱用它，不用總和，否則格式多的一維組總是顯得比較熱
+     */
+    private final float[] mGroupMaxScores = new float[GROUPS.length];
+    private final int[] mOrder = new int[GROUPS.length];
+    private int mOrderCount;
+    private final EnumSet<BarcodeFormat> mAttemptedFormats = EnumSet.noneOf(BarcodeFormat.class);
+    private long mFrameCount;
+
+    /**
+     * @param hints The decode hints; POSSIBLE_FORMATS selects the readers,
+     *              null or empty means all of them.
+     */
+    ScheduledFormatReader(Map<DecodeHintType, ?> hints, FormatScheduler scheduler) {
+        this.mScheduler = scheduler;
+        this.mHints = hints;
+        @SuppressWarnings("unchecked")
+        Collection<BarcodeFormat> formats = hints == null ? null : (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+        boolean all = formats == null || formats.isEmpty();
+        for (Group group : GROUPS) {
+            EnumSet<BarcodeFormat> enabled = EnumSet.noneOf(BarcodeFormat.class);
+            for (BarcodeFormat format : group.formats) {
+                if (all || formats.contains(format)) {
+                    enabled.add(format);
+                }
+            }
+            if (enabled.isEmpty()) {
+                continue;
+            }
+            int i = group.ordinal();
+            mReaders[i] = createReader(group, hints, enabled);
+            mGroupFormats[i] = enabled;
+            for (BarcodeFormat format : enabled) {
+                mPinned[i] |= scheduler.isPinned(format);
+            }
+        }
+    }
+
+    private static Reader createReader(Group group, Map<DecodeHintType, ?> hints, Collection<BarcodeFormat> formats) {
+        switch (group) {
+            case ONE_D:
+                Map<DecodeHintType, Object> oneDHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+                if (hints != null) {
+                    oneDHints.putAll(hints);
+                }
+                oneDHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+                return new MultiFormatOneDReader(oneDHints);
+            case QR_CODE:
+                return new QRCodeReader();
+            case DATA_MATRIX:
+                return new DataMatrixReader();
+            case AZTEC:
+                return new AztecReader();
+            case PDF_417:
+                return new PDF417Reader();
+            default:
+                return new MaxiCodeReader();
+        }
+    }
+
+    /**
+     * Picks the readers for the next frame: the one with the highest score,
+     * pinned ones and warm ones always, cold ones only on every Nth frame;
+     * best score first. A group is ordered by the sum of its formats' scores
+     * but is cold when none of its formats is warm, so the many 1D formats do
+     * not keep their group warm longer than a single 2D format.
+     *
+     * @return true if any of them needs the full black matrix, i.e. is not a
+     * 1D reader, so the caller can binarize up front.
+     */
+    boolean beginFrame() {
+        mScheduler.copyScores(mFormatScores);
+        int leader = -1;
+        for (int i = 0; i < GROUPS.length; i++) {
+            float score = 0.0f;
+            float maxScore = 0.0f;
+            if (mReaders[i] != null) {
+                for (BarcodeFormat format : mGroupFormats[i]) {
+                    float formatScore = mFormatScores[format.ordinal()];
+                    score += formatScore;
+                    maxScore = Math.max(maxScore, formatScore);
+                }
+                if (leader < 0 || score > mGroupScores[leader]) {
+                    leader = i;
+                }
+            }
+            mGroupScores[i] = score;
+            mGroupMaxScores[i] = maxScore;
+        }
+
+        boolean rareFrame = mFrameCount++ % mScheduler.getRareInterval() == 0;
+        boolean needsBlackMatrix = false;
+        mOrderCount = 0;
+        mAttemptedFormats.clear();
+        for (int i = 0; i < GROUPS.length; i++) {
+            if (mReaders[i] == null) {
+                continue;
+            }
+            if (i != leader && !mPinned[i] && !rareFrame && mGroupMaxScores[i] < FormatScheduler.COLD_SCORE) {
+                continue;
+            }
+            // 按分數插入排序，固定格式排在最前
+            int j = mOrderCount++;
+            while (j > 0 && before(i, mOrder[j - 1])) {
+                mOrder[j] = mOrder[j - 1];
+                j--;
+            }
+            mOrder[j] = i;
+            mAttemptedFormats.addAll(mGroupFormats[i]);
+            needsBlackMatrix |= GROUPS[i] != Group.ONE_D;
+        }
+        return needsBlackMatrix;
+    }
+
+    private boolean before(int a, int b) {
+        if (mPinned[a] != mPinned[b]) {
+            return mPinned[a];
+        }
+        return mGroupScores[a] > mGroupScores[b];
+    }
+
+    /**
+     * Runs the readers chosen by {@link #beginFrame()} and records the
+     * outcome with the scheduler.
+     */
+    Result decode(BinaryBitmap image) throws NotFoundException {
+        for (int k = 0; k < mOrderCount; k++) {
+            try {
+                Result result = mReaders[mOrder[k]].decode(image, mHints);
+                mScheduler.record(result.getBarcodeFormat());
+                return result;
+            } catch (ReaderException re) {
+                // continue
+            }
+        }
+        mScheduler.record(null);
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * The formats the readers of the current frame look for.
+     */
+    Collection<BarcodeFormat> getAttemptedFormats() {
+        return mAttemptedFormats;
+    }
+
+    void reset() {
+        for (Reader reader : mReaders) {
+            if (reader != null) {
+                reader.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cn.hugo.android.scanner.decode;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of mutable ARGB_8888 bitmaps the decode workers render result
+ * thumbnails into. The thumbnail is handed to the UI thread as is, without a
+ * JPEG round trip, and comes back with {@link #release(Bitmap)} once the
+ * viewfinder no longer shows it. <br/>
+ * <br/>
+ *
+ * 解碼結果縮略圖的點陣圖池：解碼線程直接把縮略圖畫進池中的點陣圖交給ui線程，掃描框不再顯示時歸還
+ */
+final class ThumbnailPool {
+    private static final String TAG = ThumbnailPool.class.getSimpleName();
+
+    /**
+     * 一張正在顯示，一張給下一次結果
+     */
+    private static final int MAX_POOLED = 2;
+
+    private final ArrayDeque<Bitmap> mBitmaps = new ArrayDeque<Bitmap>(MAX_POOLED);
+
+    /**
+     * @return A mutable bitmap of the given size, with undefined contents.
+     */
+    synchronized Bitmap acquire(int width, int height) {
+        while (!mBitmaps.isEmpty()) {
+            Bitmap bitmap = mBitmaps.poll();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                return bitmap;
+            }
+            // 掃描框尺寸變了，舊的點陣圖不再可用
+            bitmap.recycle();
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (mBitmaps.size() < MAX_POOLED && !mBitmaps.contains(bitmap)) {
+            mBitmaps.offer(bitmap);
+        } else if (!mBitmaps.contains(bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
+    synchronized void clear() {
+        while (!mBitmaps.isEmpty()) {
+            mBitmaps.poll().recycle();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.Result;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes large photos at full resolution, where
+ * {@link cn.hugo.android.scanner.common.BitmapUtils#getCompressedBitmap(String)}
+ * would shrink small barcodes away. The image is cut into overlapping tiles,
+ * each tile is loaded with {@link BitmapRegionDecoder} and scanned with a
+ * {@link BitmapDecoder}. Tiles are processed by a fixed number of threads,
+ * each holding a single tile bitmap at a time, so memory stays at about
+ * threads * tileSize^2 * 5 bytes whatever the image size. Hits in the
+ * overlaps are merged. <br/>
+ * <br/>
+ *
+ * 大圖分塊解碼：按重疊的分塊以原始解析度解碼，多線程並行，記憶體只與線程數和分塊大小有關，重疊區的重複結果會合併
+ */
+public final class TiledImageDecoder {
+    private static final String TAG = TiledImageDecoder.class.getSimpleName();
+
+    static final int DEFAULT_TILE_SIZE = 1024;
+
+    /**
+     * 不超過重疊寬度的條碼至少完整落在一個分塊內
+     */
+    static final int DEFAULT_OVERLAP = 256;
+
+    private final Context mContext;
+    private final int mTileSize;
+    private final int mOverlap;
+    private final int mThreads;
+    private final ExecutorService mExecutor;
+
+    public TiledImageDecoder(Context context) {
+        this(context, DecodeWorkerPool.defaultPoolSize(), DEFAULT_TILE_SIZE, DEFAULT_OVERLAP);
+    }
+
+    /**
+     * @param threads  並行解碼的線程數
+     * @param tileSize 分塊邊長
+     * @param overlap  相鄰分塊重疊的像素數，應不小於要識別的最大條碼
+     */
+    public TiledImageDecoder(Context context, int threads, int tileSize, int overlap) {
+        if (threads < 1 || overlap < 0 || tileSize <= overlap) {
+            throw new IllegalArgumentException("Bad tiling: threads " + threads + ", tile " + tileSize + ", overlap " + overlap);
+        }
+        this.mContext = context.getApplicationContext();
+        this.mThreads = threads;
+        this.mTileSize = tileSize;
+        this.mOverlap = overlap;
+        this.mExecutor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Decodes every tile of the image; blocks until done. Call it off the
+     * main thread.
+     *
+     * @return The barcodes found, with points in image coordinates.
+     * @throws IOException If the file cannot be read as an image.
+     */
+    public List<Result> decode(final String path) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Cannot read image size of " + path);
+        }
+        final List<Rect> tiles = tiles(bounds.outWidth, bounds.outHeight, mTileSize, mOverlap);
+        final AtomicInteger nextTile = new AtomicInteger();
+        int workers = Math.min(mThreads, tiles.size());
+        List<Future<List<Result>>> futures = new ArrayList<Future<List<Result>>>(workers);
+        for (int i = 0; i < workers; i++) {
+            // 每個線程用自己的區域解碼器和讀取器，依次領取分塊
+            futures.add(mExecutor.submit(new Callable<List<Result>>() {
+                @Override
+                public List<Result> call() throws IOException {
+                    return decodeTiles(path, tiles, nextTile);
+                }
+            }));
+        }
+
+        ResultMerger merger = new ResultMerger(mOverlap);
+        try {
+            for (Future<List<Result>> future : futures) {
+                for (Result result : future.get()) {
+                    merger.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<List<Result>> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding " + path);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Cannot decode " + path + ": " + cause);
+        }
+        return merger.getResults();
+    }
+
+    private List<Result> decodeTiles(String path, List<Rect> tiles, AtomicInteger nextTile) throws IOException {
+        List<Result> results = new ArrayList<Result>();
+        BitmapRegionDecoder regionDecoder = BitmapRegionDecoder.newInstance(path, false);
+        try {
+            BitmapDecoder decoder = new BitmapDecoder(mContext);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            int index;
+            while ((index = nextTile.getAndIncrement()) < tiles.size() && !Thread.currentThread().isInterrupted()) {
+                Rect tile = tiles.get(index);
+                Bitmap bitmap = regionDecoder.decodeRegion(tile, options);
+                if (bitmap == null) {
+                    continue;
+                }
+                try {
+                    Result result = decoder.getRawResult(bitmap);
+                    if (result != null) {
+                        results.add(ResultMerger.translate(result, tile.left, tile.top));
+                    }
+                } finally {
+                    bitmap.recycle();
+                }
+            }
+        } finally {
+            regionDecoder.recycle();
+        }
+        return results;
+    }
+
+    /**
+     * Cuts a width x height image into tiles of at most tileSize, each
+     * overlapping its neighbours by {@code overlap}; the last row and column
+     * are shifted back to stay full size where the image allows.
+     */
+    static List<Rect> tiles(int width, int height, int tileSize, int overlap) {
+        int[] xs = starts(width, tileSize, overlap);
+        int[] ys = starts(height, tileSize, overlap);
+        List<Rect> tiles = new ArrayList<Rect>(xs.length * ys.length);
+        for (int y : ys) {
+            for (int x : xs) {
+                tiles.add(new Rect(x, y, Math.min(width, x + tileSize), Math.min(height, y + tileSize)));
+            }
+        }
+        return tiles;
+    }
+
+    private static int[] starts(int length, int tileSize, int overlap) {
+        if (length <= tileSize) {
+            return new int[]{0};
+        }
+        int step = tileSize - overlap;
+        int count = (length - overlap + step - 1) / step;
+        int[] starts = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = Math.min(i * step, length - tileSize);
+        }
+        return starts;
+    }
+
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+}
@@ -0,0 +1,193 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A rotated and cropped view over a luminance plane read through a
+ * {@link ByteBuffer}, such as the Y plane of a camera2 YUV_420_888 image.
+ * Rows may be padded and pixels interleaved, as given by the row and pixel
+ * stride. The plane is never copied as a whole: rows along the source rows
+ * are served with one bulk get into the caller's buffer, and
+ * {@link #getMatrix()} reads only the rows the crop covers, once. Works the
+ * same on a heap buffer, but a direct one (camera2 planes, memory-mapped
+ * files) is what makes the bulk gets plain memory copies. <br/>
+ * <br/>
+ *
+ * ByteBuffer亮度平面（如camera2的Y平面、映射檔）的旋轉、裁剪視圖，支援行距和像素間距。
+ * getRow以批量get直接讀入呼叫者的緩衝區，getMatrix只讀掃描框覆蓋的行
+ */
+public final class YuvPlaneLuminanceSource extends LuminanceSource {
+    private static final String TAG = YuvPlaneLuminanceSource.class.getSimpleName();
+
+    private final ByteBuffer mPlane;
+
+    /**
+     * 批量讀取用的副本，移動它的position不影響原平面
+     */
+    private final ByteBuffer mView;
+    private final int mRowStride;
+    private final int mPixelStride;
+    private final int mDataWidth;
+    private final int mDataHeight;
+    private final int mRotation;
+    private final int mLeft;
+    private final int mTop;
+    private final FrameRotator mMatrixRotator;
+    private byte[] mMatrix;
+
+    /**
+     * 像素交錯或反向讀取時暫存一行源資料
+     */
+    private byte[] mSpan;
+
+    /**
+     * An upright, uncropped view of a packed plane, e.g. a greyscale image
+     * in a mapped file.
+     */
+    public YuvPlaneLuminanceSource(ByteBuffer plane, int rowStride, int width, int height) {
+        this(plane, rowStride, 1, width, height, 0, 0, 0, width, height, null);
+    }
+
+    /**
+     * @param plane       Read with absolute gets only; its position and limit
+     *                    are left alone.
+     * @param rowStride   Bytes from one row to the next.
+     * @param pixelStride Bytes from one pixel to the next within a row.
+     * @param rotation    Clockwise rotation of the view: 0, 90, 180 or 270.
+     * @param left        The crop, in rotated coordinates.
+     * @param matrixRotator Supplies the (reused) buffer {@link #getMatrix()}
+     *                      is materialized into; null allocates a new one.
+     */
+    public YuvPlaneLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride, int dataWidth, int dataHeight,
+                                   int rotation, int left, int top, int width, int height, FrameRotator matrixRotator) {
+        super(width, height);
+        rotation = ((rotation % 360) + 360) % 360;
+        if (rotation % 90 != 0) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+        boolean swapped = rotation == 90 || rotation == 270;
+        int rotatedWidth = swapped ? dataHeight : dataWidth;
+        int rotatedHeight = swapped ? dataWidth : dataHeight;
+        if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        this.mPlane = plane;
+        this.mView = plane.duplicate();
+        this.mRowStride = rowStride;
+        this.mPixelStride = pixelStride;
+        this.mDataWidth = dataWidth;
+        this.mDataHeight = dataHeight;
+        this.mRotation = rotation;
+        this.mLeft = left;
+        this.mTop = top;
+        this.mMatrixRotator = matrixRotator;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        byte[] matrix = mMatrix;
+        if (matrix != null) {
+            System.arraycopy(matrix, y * width, row, 0, width);
+            return row;
+        }
+        int ry = mTop + y;
+        switch (mRotation) {
+            case 0:
+                if (mPixelStride == 1) {
+                    mView.position(ry * mRowStride + mLeft);
+                    mView.get(row, 0, width);
+                } else {
+                    readSpan(ry, mLeft, width);
+                    for (int x = 0, src = 0; x < width; x++, src += mPixelStride) {
+                        row[x] = mSpan[src];
+                    }
+                }
+                return row;
+            case 180: {
+                // rotated(rx, ry) = source(dataWidth - 1 - rx, dataHeight - 1 - ry)
+                readSpan(mDataHeight - 1 - ry, mDataWidth - mLeft - width, width);
+                for (int x = 0, src = (width - 1) * mPixelStride; x < width; x++, src -= mPixelStride) {
+                    row[x] = mSpan[src];
+                }
+                return row;
+            }
+            default:
+                break;
+        }
+        // 旋轉90、270度時一行是源資料的一列，只能逐個讀取
+        int offset;
+        int step;
+        if (mRotation == 90) {
+            // rotated(rx, ry) = source(ry, dataHeight - 1 - rx)
+            offset = (mDataHeight - 1 - mLeft) * mRowStride + ry * mPixelStride;
+            step = -mRowStride;
+        } else {
+            // rotated(rx, ry) = source(dataWidth - 1 - ry, rx)
+            offset = mLeft * mRowStride + (mDataWidth - 1 - ry) * mPixelStride;
+            step = mRowStride;
+        }
+        for (int x = 0; x < width; x++) {
+            row[x] = mPlane.get(offset);
+            offset += step;
+        }
+        return row;
+    }
+
+    /**
+     * Bulk-reads {@code count} pixels of source row {@code sy} from
+     * {@code sx} on into {@link #mSpan}, strides included.
+     */
+    private void readSpan(int sy, int sx, int count) {
+        int span = (count - 1) * mPixelStride + 1;
+        if (mSpan == null || mSpan.length < span) {
+            mSpan = new byte[span];
+        }
+        mView.position(sy * mRowStride + sx * mPixelStride);
+        mView.get(mSpan, 0, span);
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        byte[] matrix = mMatrix;
+        if (matrix == null) {
+            FrameRotator rotator = mMatrixRotator != null ? mMatrixRotator : new FrameRotator();
+            matrix = rotator.rotateAndCrop(mPlane, mRowStride, mPixelStride, mDataWidth, mDataHeight, mRotation,
+                    mLeft, mTop, getWidth(), getHeight());
+            mMatrix = matrix;
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new YuvPlaneLuminanceSource(mPlane, mRowStride, mPixelStride, mDataWidth, mDataHeight, mRotation,
+                mLeft + left, mTop + top, width, height, null);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        boolean swapped = mRotation == 90 || mRotation == 270;
+        int rotatedWidth = swapped ? mDataHeight : mDataWidth;
+        return new YuvPlaneLuminanceSource(mPlane, mRowStride, mPixelStride, mDataWidth, mDataHeight, mRotation + 270,
+                mTop, rotatedWidth - mLeft - getWidth(), getHeight(), getWidth(), null);
+    }
+}
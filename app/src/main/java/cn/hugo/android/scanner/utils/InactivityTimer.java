@@ -21,11 +21,10 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.os.AsyncTask;
 import android.os.BatteryManager;
 import android.util.Log;
 
-import cn.hugo.android.scanner.common.Runnable;
+import cn.hugo.android.scanner.common.ScannerScheduler;
 
 /**
  * Finishes an activity after a period of inactivity if the device is on battery
@@ -51,7 +50,18 @@ public class InactivityTimer {
      */
     private final BroadcastReceiver mPowerStatusReceiver;
     private boolean mRegistered;
-    private AsyncTask<?, ?, ?> mInactivityTask;
+    private ScannerScheduler.Task mInactivityTask;
+
+    /**
+     * 在INACTIVITY_DELAY_MS時間後終結activity
+     */
+    private final Runnable mFinishActivity = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Finishing activity due to inactivity");
+            mActivity.finish();
+        }
+    };
 
     public InactivityTimer(Activity activity) {
         this.mActivity = activity;
@@ -72,8 +82,7 @@ public class InactivityTimer {
      */
     public synchronized void onActivity() {
         cancel();
-        mInactivityTask = new InactivityAsyncTask();
-        Runnable.execAsync(mInactivityTask);
+        mInactivityTask = ScannerScheduler.getInstance().schedule(mFinishActivity, INACTIVITY_DELAY_MS);
     }
 
     public synchronized void onPause() {
@@ -100,9 +109,9 @@ public class InactivityTimer {
      * 取消監控任務
      */
     private synchronized void cancel() {
-        AsyncTask<?, ?, ?> task = mInactivityTask;
+        ScannerScheduler.Task task = mInactivityTask;
         if (task != null) {
-            task.cancel(true);
+            task.cancel();
             mInactivityTask = null;
         }
     }
@@ -128,22 +137,4 @@ public class InactivityTimer {
             }
         }
     }
-
-    /**
-     * 該任務很簡單，就是在INACTIVITY_DELAY_MS時間後終結activity
-     */
-    private final class InactivityAsyncTask extends AsyncTask<Object, Object, Object> {
-        @Override
-        protected Object doInBackground(Object... objects) {
-            try {
-                Thread.sleep(INACTIVITY_DELAY_MS);
-                Log.i(TAG, "Finishing activity due to inactivity");
-                mActivity.finish();
-            } catch (InterruptedException e) {
-                // continue without killing
-            }
-            return null;
-        }
-    }
 }
-
@@ -241,12 +241,13 @@ public final class ViewfinderView extends View {
         bitmapCornerBottomRight = null;
     }
 
+    /**
+     * Goes back to the live scanning display. The result bitmap is not
+     * recycled here: it belongs to the thumbnail pool of the decoder, which
+     * reuses it for the next result.
+     */
     public void drawViewfinder() {
-        Bitmap resultBitmap = this.mResultBitmap;
         this.mResultBitmap = null;
-        if (resultBitmap != null) {
-            resultBitmap.recycle();
-        }
         invalidate();
     }
 
@@ -0,0 +1,73 @@
+package cn.hugo.android.scanner.camera;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips a {@link CameraProfile} through its binary form.
+ */
+public class CameraProfileTest {
+    private static final String BUILD = "vendor/device/device:8.1.0/OPM1/1:user/release-keys";
+
+    @Test
+    public void readFrom_restoresProfile() throws Exception {
+        CameraProfile profile = read(write(profile()), 0, BUILD);
+        assertEquals(3, profile.getPreviewSizeCount());
+        assertEquals(1280, profile.getPreviewWidth(1));
+        assertEquals(720, profile.getPreviewHeight(1));
+        assertEquals(640, profile.getDefaultPreviewWidth());
+        assertEquals(Arrays.asList("auto", "continuous-picture"), profile.getFocusModes());
+        assertTrue(profile.hasTorch());
+        // 不支持的項目保持為null
+        assertNull(profile.getColorEffects());
+        assertTrue(profile.isZoomSupported());
+        assertEquals(3, profile.getMaxZoom());
+        assertArrayEquals(new int[]{100, 150, 200, 400}, profile.getZoomRatios());
+    }
+
+    @Test
+    public void readFrom_ignoresOtherCameraOrBuild() throws Exception {
+        byte[] data = write(profile());
+        assertNull(read(data, 1, BUILD));
+        assertNull(read(data, 0, BUILD + ".1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsTruncatedFile() throws Exception {
+        byte[] data = write(profile());
+        read(Arrays.copyOf(data, data.length - 3), 0, BUILD);
+    }
+
+    @Test
+    public void hasTorch_falseWithoutFlash() throws Exception {
+        CameraProfile profile = new CameraProfile(1, BUILD, new int[0], new int[0], 640, 480,
+                null, Arrays.asList("off"), null, false, 0, new int[0]);
+        assertFalse(read(write(profile), 1, BUILD).hasTorch());
+    }
+
+    private static CameraProfile profile() {
+        return new CameraProfile(0, BUILD, new int[]{1920, 1280, 640}, new int[]{1080, 720, 480}, 640, 480,
+                Arrays.asList("auto", "continuous-picture"), Arrays.asList("off", "torch"), null,
+                true, 3, new int[]{100, 150, 200, 400});
+    }
+
+    private static byte[] write(CameraProfile profile) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profile.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static CameraProfile read(byte[] data, int cameraId, String build) throws IOException {
+        return CameraProfile.readFrom(new ByteArrayInputStream(data), cameraId, build);
+    }
+}
@@ -0,0 +1,59 @@
+package cn.hugo.android.scanner.camera;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which preview size {@link PreviewSizeSelector} picks for a typical
+ * list of 16:9 and 4:3 sizes.
+ */
+public class PreviewSizeSelectorTest {
+    private static final int[] WIDTHS = {1920, 640, 1280, 800, 3840, 960};
+    private static final int[] HEIGHTS = {1080, 480, 720, 480, 2160, 540};
+    private static final long TARGET = PreviewSizeSelector.TARGET_DECODE_NANOS;
+
+    @Test
+    public void select_qrOnlyTakesSmallestSize() throws Exception {
+        PreviewSizeSelector selector = new PreviewSizeSelector(EnumSet.of(BarcodeFormat.QR_CODE), 0.625f, 150.0f, TARGET);
+        int index = selector.select(WIDTHS, HEIGHTS);
+        assertEquals(640, WIDTHS[index]);
+        assertTrue(selector.rectPixels(WIDTHS[index], HEIGHTS[index]) >= selector.getPreferredRectPixels());
+    }
+
+    @Test
+    public void select_growsTowardsPreferredDensityWithinBudget() throws Exception {
+        PreviewSizeSelector selector = new PreviewSizeSelector(EnumSet.of(BarcodeFormat.EAN_13), 0.625f, 150.0f, TARGET);
+        int index = selector.select(WIDTHS, HEIGHTS);
+        assertEquals(1280, WIDTHS[index]);
+        assertTrue(selector.estimateDecodeNanos(WIDTHS[index], HEIGHTS[index]) <= TARGET);
+    }
+
+    @Test
+    public void select_slowDeviceStopsAtMinimum() throws Exception {
+        // 預算只夠最低要求的尺寸
+        PreviewSizeSelector selector = new PreviewSizeSelector(EnumSet.of(BarcodeFormat.EAN_13), 0.625f, 600.0f, TARGET);
+        int index = selector.select(WIDTHS, HEIGHTS);
+        assertEquals(640, WIDTHS[index]);
+        assertTrue(selector.rectPixels(WIDTHS[index], HEIGHTS[index]) >= selector.getRequiredRectPixels());
+    }
+
+    @Test
+    public void select_industrial1DNeedsMorePixels() throws Exception {
+        PreviewSizeSelector selector = new PreviewSizeSelector(EnumSet.of(BarcodeFormat.CODE_128), 0.625f, 150.0f, TARGET);
+        int index = selector.select(WIDTHS, HEIGHTS);
+        assertEquals(1920, WIDTHS[index]);
+    }
+
+    @Test
+    public void select_fallsBackToLargest() throws Exception {
+        PreviewSizeSelector selector = new PreviewSizeSelector(EnumSet.of(BarcodeFormat.CODE_128), 0.2f, 150.0f, TARGET);
+        assertEquals(4, selector.select(WIDTHS, HEIGHTS));
+        assertEquals(-1, selector.select(new int[0], new int[0]));
+    }
+}
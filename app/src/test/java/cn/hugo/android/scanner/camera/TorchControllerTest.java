@@ -0,0 +1,77 @@
+package cn.hugo.android.scanner.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds lux readings and ticks to a {@link TorchController}: a single step
+ * into darkness, short dips and readings between the two thresholds.
+ */
+public class TorchControllerTest {
+
+    @Test
+    public void singleDarkReading_switchesOnAsTimePasses() throws Exception {
+        TorchController controller = new TorchController(false);
+        assertFalse(controller.onLux(300f, 0L));
+        // 光感測器只在變化時回報：一次暗讀數之後不再有事件
+        assertFalse(controller.onLux(5f, 1000L));
+        assertFalse(controller.isSettled());
+        boolean torchOn = false;
+        for (long now = 1000L + TorchController.TICK_MS; now <= 5000L; now += TorchController.TICK_MS) {
+            torchOn = controller.onTick(now);
+        }
+        assertTrue(torchOn);
+    }
+
+    @Test
+    public void shortDips_areSmoothedAway() throws Exception {
+        TorchController controller = new TorchController(false);
+        controller.onLux(300f, 0L);
+        long now = 1000L;
+        for (int i = 0; i < 10; i++) {
+            // 手掠過感測器：50ms的暗讀數之後回到原本的亮度
+            assertFalse(controller.onLux(2f, now));
+            now += 50L;
+            assertFalse(controller.onLux(300f, now));
+            for (int tick = 0; tick < 2; tick++) {
+                now += TorchController.TICK_MS;
+                assertFalse(controller.onTick(now));
+            }
+        }
+    }
+
+    @Test
+    public void shortDip_justAboveThreshold_keepsTorchOff() throws Exception {
+        TorchController controller = new TorchController(false);
+        assertFalse(controller.onLux(55f, 0L));
+        assertFalse(tickUntil(controller, 0L, 5000L));
+        // 略高於臨界值的室內亮度，手掠過感測器一次
+        assertFalse(controller.onLux(2f, 5000L));
+        assertFalse(controller.onLux(55f, 5050L));
+        assertFalse(tickUntil(controller, 5050L, 10000L));
+    }
+
+    @Test
+    public void betweenThresholds_keepsState() throws Exception {
+        TorchController on = new TorchController(true);
+        assertTrue(on.onLux(200f, 0L));
+        assertTrue(tickUntil(on, 0L, 5000L));
+        assertTrue(on.isSettled());
+        on.onLux(1000f, 5000L);
+        assertFalse(tickUntil(on, 5000L, 10000L));
+
+        TorchController off = new TorchController(false);
+        assertFalse(off.onLux(200f, 0L));
+        assertFalse(tickUntil(off, 0L, 5000L));
+    }
+
+    private static boolean tickUntil(TorchController controller, long startMs, long endMs) {
+        boolean torchOn = false;
+        for (long now = startMs + TorchController.TICK_MS; now <= endMs; now += TorchController.TICK_MS) {
+            torchOn = controller.onTick(now);
+        }
+        return torchOn;
+    }
+}
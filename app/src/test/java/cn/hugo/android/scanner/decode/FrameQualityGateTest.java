@@ -0,0 +1,92 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.EAN13Writer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link FrameQualityGate} on synthetic stripes: sharp, blurred,
+ * dark and flat.
+ */
+public class FrameQualityGateTest {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 160;
+
+    @Test
+    public void sharpStripes_areAccepted() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate();
+        assertEquals(FrameQualityGate.Verdict.ACCEPT, gate.evaluate(source(stripes(40, 200, 0))));
+        assertTrue(gate.getContrast() > 60);
+    }
+
+    @Test
+    public void renderedBarcode_isAccepted() throws Exception {
+        BitMatrix matrix = new EAN13Writer().encode("5901234123457", BarcodeFormat.EAN_13, WIDTH, HEIGHT);
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame[y * WIDTH + x] = (byte) (matrix.get(x, y) ? 30 : 210);
+            }
+        }
+        assertEquals(FrameQualityGate.Verdict.ACCEPT, new FrameQualityGate().evaluate(source(frame)));
+    }
+
+    @Test
+    public void blurredStripes_areBlurry() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate();
+        FrameQualityGate.Verdict verdict = gate.evaluate(source(stripes(40, 200, 9)));
+        assertEquals(FrameQualityGate.Verdict.BLURRY, verdict);
+        assertTrue(verdict.isOutOfFocus());
+        // 對比度仍然足夠，只是邊緣不清晰
+        assertTrue(gate.getContrast() > FrameQualityGate.DEFAULT_MIN_CONTRAST);
+    }
+
+    @Test
+    public void darkFrame_isTooDark() throws Exception {
+        FrameQualityGate.Verdict verdict = new FrameQualityGate().evaluate(source(stripes(2, 20, 0)));
+        assertEquals(FrameQualityGate.Verdict.TOO_DARK, verdict);
+    }
+
+    @Test
+    public void flatFrame_hasLowContrast() throws Exception {
+        assertEquals(FrameQualityGate.Verdict.LOW_CONTRAST, new FrameQualityGate().evaluate(source(stripes(120, 124, 0))));
+    }
+
+    private static RotatedLuminanceSource source(byte[] frame) {
+        return new RotatedLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT, null);
+    }
+
+    /**
+     * Vertical stripes 16 pixels wide, optionally smoothed with a
+     * horizontal box filter {@code blur} pixels wide.
+     */
+    private static byte[] stripes(int dark, int light, int blur) {
+        int[] line = new int[WIDTH];
+        for (int x = 0; x < WIDTH; x++) {
+            line[x] = (x / 16) % 2 == 0 ? dark : light;
+        }
+        if (blur > 1) {
+            int[] blurred = new int[WIDTH];
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                for (int i = -blur / 2; i <= blur / 2; i++) {
+                    sum += line[Math.min(WIDTH - 1, Math.max(0, x + i))];
+                }
+                blurred[x] = sum / (blur / 2 * 2 + 1);
+            }
+            line = blurred;
+        }
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame[y * WIDTH + x] = (byte) line[x];
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,97 @@
+package cn.hugo.android.scanner.decode;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks {@link FrameRotator} against a naive full-frame rotation, and
+ * measures how many bytes a steady stream of 1080p frames allocates.
+ */
+public class FrameRotatorTest {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Test
+    public void rotateAndCrop_matchesFullFrameRotation() throws Exception {
+        byte[] frame = randomFrame(64, 48);
+        FrameRotator rotator = new FrameRotator();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean swapped = rotation % 180 != 0;
+            int rotatedWidth = swapped ? 48 : 64;
+            byte[] rotated = rotateFully(frame, 64, 48, rotation);
+            byte[] expected = new byte[20 * 10];
+            for (int y = 0; y < 10; y++) {
+                System.arraycopy(rotated, (7 + y) * rotatedWidth + 5, expected, y * 20, 20);
+            }
+            assertArrayEquals("rotation " + rotation, expected, rotator.rotateAndCrop(frame, 64, 48, rotation, 5, 7, 20, 10));
+        }
+    }
+
+    @Test
+    public void rotateAndCrop_reusesBufferWithoutAllocating() throws Exception {
+        byte[] frame = randomFrame(WIDTH, HEIGHT);
+        FrameRotator rotator = new FrameRotator();
+        // 與CameraManager.getFramingRectInPreview()在1080p豎屏上的結果相當
+        byte[] first = rotator.rotateAndCrop(frame, WIDTH, HEIGHT, 90, 202, 600, 675, 675);
+        for (int i = 0; i < 200; i++) {
+            rotator.rotateAndCrop(frame, WIDTH, HEIGHT, 90, 202, 600, 675, 675);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int frames = 1000;
+        byte[] last = null;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < frames; i++) {
+            last = rotator.rotateAndCrop(frame, WIDTH, HEIGHT, 90, 202, 600, 675, 675);
+        }
+        long after = threads.getThreadAllocatedBytes(threadId);
+
+        assertSame(first, last);
+        assertEquals("bytes allocated per frame", 0L, (after - before) / frames);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateAndCrop_rejectsRectOutsideRotatedFrame() throws Exception {
+        new FrameRotator().rotateAndCrop(new byte[64 * 48], 64, 48, 90, 0, 0, 64, 10);
+    }
+
+    private static byte[] randomFrame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(frame);
+        return frame;
+    }
+
+    /**
+     * The rotation DecodeHandler used to do, generalised to any quadrant.
+     */
+    private static byte[] rotateFully(byte[] data, int width, int height, int rotation) {
+        byte[] rotated = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                byte value = data[x + y * width];
+                switch (rotation) {
+                    case 0:
+                        rotated[y * width + x] = value;
+                        break;
+                    case 90:
+                        rotated[x * height + height - y - 1] = value;
+                        break;
+                    case 180:
+                        rotated[(height - 1 - y) * width + width - 1 - x] = value;
+                        break;
+                    default:
+                        rotated[(width - 1 - x) * height + y] = value;
+                        break;
+                }
+            }
+        }
+        return rotated;
+    }
+}
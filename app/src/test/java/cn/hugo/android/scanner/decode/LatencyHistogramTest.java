@@ -0,0 +1,41 @@
+package cn.hugo.android.scanner.decode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentiles_stayWithinBucketPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1000000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000000L, histogram.getMax());
+        assertWithin(50000000L, histogram.getValueAtPercentile(50.0));
+        assertWithin(95000000L, histogram.getValueAtPercentile(95.0));
+        assertWithin(99000000L, histogram.getValueAtPercentile(99.0));
+        assertEquals(100000000L, histogram.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    public void buckets_areContiguous() throws Exception {
+        for (int index = 1; index < 1888; index++) {
+            long lowest = LatencyHistogram.highestEquivalentValue(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.indexOf(lowest));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestEquivalentValue(index)));
+        }
+        assertEquals(1887, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void empty_reportsZero() throws Exception {
+        assertEquals(0L, new LatencyHistogram().getValueAtPercentile(99.0));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 32 + 1);
+    }
+}
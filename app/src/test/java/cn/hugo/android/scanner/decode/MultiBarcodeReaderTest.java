@@ -0,0 +1,76 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.oned.Code128Writer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Decodes a synthetic label with several codes through
+ * {@link MultiBarcodeReader}.
+ */
+public class MultiBarcodeReaderTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Test
+    public void decode_findsEveryCode() throws Exception {
+        MultiBarcodeReader reader = new MultiBarcodeReader(hints(), 8);
+        List<Result> results = reader.decode(label());
+        Set<String> texts = new HashSet<String>();
+        for (Result result : results) {
+            texts.add(result.getText());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("PALLET-1", "PALLET-2", "SSCC-0001")), texts);
+    }
+
+    @Test
+    public void decode_stopsAtCap() throws Exception {
+        MultiBarcodeReader reader = new MultiBarcodeReader(hints(), 2);
+        assertEquals(2, reader.decode(label()).size());
+    }
+
+    private static Map<DecodeHintType, Object> hints() {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128));
+        return hints;
+    }
+
+    private static BinaryBitmap label() throws Exception {
+        byte[] image = new byte[WIDTH * HEIGHT];
+        Arrays.fill(image, (byte) 255);
+        paint(image, new QRCodeWriter().encode("PALLET-1", BarcodeFormat.QR_CODE, 0, 0), 40, 40, 5, 5);
+        paint(image, new QRCodeWriter().encode("PALLET-2", BarcodeFormat.QR_CODE, 0, 0), 400, 40, 5, 5);
+        paint(image, new Code128Writer().encode("SSCC-0001", BarcodeFormat.CODE_128, 0, 0), 120, 330, 3, 100);
+        return new BinaryBitmap(new HybridBinarizer(new PlanarYUVLuminanceSource(image, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false)));
+    }
+
+    private static void paint(byte[] image, BitMatrix code, int left, int top, int scaleX, int height) {
+        int rows = code.getHeight() == 1 ? height : code.getHeight() * scaleX;
+        for (int y = 0; y < rows; y++) {
+            int moduleY = code.getHeight() == 1 ? 0 : y / scaleX;
+            for (int x = 0; x < code.getWidth() * scaleX; x++) {
+                if (code.get(x / scaleX, moduleY)) {
+                    image[(top + y) * WIDTH + left + x] = 0;
+                }
+            }
+        }
+    }
+}
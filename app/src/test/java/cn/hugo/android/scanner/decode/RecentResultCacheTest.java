@@ -0,0 +1,44 @@
+package cn.hugo.android.scanner.decode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the window and capacity of {@link RecentResultCache}.
+ */
+public class RecentResultCacheTest {
+
+    @Test
+    public void isDuplicate_withinWindow() throws Exception {
+        RecentResultCache cache = new RecentResultCache(1000, 8);
+        assertFalse(cache.isDuplicate("QR_CODE:A", 0));
+        assertTrue(cache.isDuplicate("QR_CODE:A", 500));
+        assertFalse(cache.isDuplicate("QR_CODE:B", 600));
+    }
+
+    @Test
+    public void isDuplicate_sightingRestartsWindow() throws Exception {
+        RecentResultCache cache = new RecentResultCache(1000, 8);
+        cache.isDuplicate("QR_CODE:A", 0);
+        // 一直留在鏡頭前的條碼不會再次回調
+        assertTrue(cache.isDuplicate("QR_CODE:A", 900));
+        assertTrue(cache.isDuplicate("QR_CODE:A", 1800));
+        // 離開超過窗口後再出現
+        assertFalse(cache.isDuplicate("QR_CODE:A", 2800));
+    }
+
+    @Test
+    public void isDuplicate_dropsLeastRecentAboveCapacity() throws Exception {
+        RecentResultCache cache = new RecentResultCache(10000, 2);
+        cache.isDuplicate("A", 0);
+        cache.isDuplicate("B", 1);
+        cache.isDuplicate("A", 2);
+        cache.isDuplicate("C", 3);
+        assertEquals(2, cache.size());
+        assertTrue(cache.isDuplicate("A", 4));
+        assertFalse(cache.isDuplicate("B", 5));
+    }
+}
@@ -0,0 +1,48 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link ResultMerger} tells duplicates from distinct barcodes.
+ */
+public class ResultMergerTest {
+
+    @Test
+    public void add_mergesSameCodeNearby() throws Exception {
+        ResultMerger merger = new ResultMerger(256);
+        // 同一個條碼出現在兩個重疊分塊中，換算到整圖座標後位置相同
+        assertTrue(merger.add(ResultMerger.translate(result("A-1", 100, 100), 768, 0)));
+        assertFalse(merger.add(result("A-1", 870, 102)));
+        assertEquals(1, merger.size());
+    }
+
+    @Test
+    public void add_keepsSameCodeFarApart() throws Exception {
+        ResultMerger merger = new ResultMerger(256);
+        assertTrue(merger.add(result("A-1", 100, 100)));
+        assertTrue(merger.add(result("A-1", 2000, 100)));
+        assertTrue(merger.add(result("B-2", 100, 100)));
+        assertEquals(3, merger.size());
+    }
+
+    @Test
+    public void translate_movesPointsAndKeepsContent() throws Exception {
+        Result moved = ResultMerger.translate(result("A-1", 10, 20), 5, 7);
+        assertEquals("A-1", moved.getText());
+        assertEquals(BarcodeFormat.QR_CODE, moved.getBarcodeFormat());
+        assertEquals(15.0f, moved.getResultPoints()[0].getX(), 0.0f);
+        assertEquals(27.0f, moved.getResultPoints()[0].getY(), 0.0f);
+    }
+
+    private static Result result(String text, float x, float y) {
+        return new Result(text, null, new ResultPoint[]{new ResultPoint(x, y)}, BarcodeFormat.QR_CODE);
+    }
+}
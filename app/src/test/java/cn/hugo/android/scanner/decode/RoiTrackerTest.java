@@ -0,0 +1,57 @@
+package cn.hugo.android.scanner.decode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link RoiTracker} narrows and widens the decode region.
+ */
+public class RoiTrackerTest {
+    private static final int FULL = 800;
+
+    @Test
+    public void region_isFullRectWithoutPoints() throws Exception {
+        int[] region = new int[4];
+        assertFalse(new RoiTracker(3).region(FULL, FULL, region));
+        assertArrayEquals(new int[]{0, 0, FULL, FULL}, region);
+    }
+
+    @Test
+    public void region_narrowsAroundCluster() throws Exception {
+        RoiTracker tracker = new RoiTracker(3);
+        // 三個定位圖形中心，跨度100
+        tracker.update(FULL, FULL, new float[]{500, 600, 500}, new float[]{100, 100, 200}, 3);
+
+        int[] region = new int[4];
+        assertTrue(tracker.region(FULL, FULL, region));
+        assertEquals(region[2], region[3]);
+        assertTrue("size " + region[2], region[2] >= 220 && region[2] < FULL);
+        // 聚集中心落在區域內，且區域不超出掃描框
+        assertTrue(region[0] <= 550 && region[0] + region[2] >= 550);
+        assertTrue(region[1] >= 0 && region[1] <= 150 && region[1] + region[3] >= 150);
+    }
+
+    @Test
+    public void region_fallsBackAfterMaxMisses() throws Exception {
+        RoiTracker tracker = new RoiTracker(3);
+        tracker.update(FULL, FULL, new float[]{300, 400}, new float[]{400, 400}, 2);
+        int[] region = new int[4];
+        for (int i = 0; i < 2; i++) {
+            tracker.update(FULL, FULL, new float[0], new float[0], 0);
+            assertTrue("miss " + (i + 1), tracker.region(FULL, FULL, region));
+        }
+        tracker.update(FULL, FULL, new float[0], new float[0], 0);
+        assertFalse(tracker.region(FULL, FULL, region));
+    }
+
+    @Test
+    public void region_staysFullForSpreadOutPoints() throws Exception {
+        RoiTracker tracker = new RoiTracker(3);
+        tracker.update(FULL, FULL, new float[]{10, 790}, new float[]{10, 790}, 2);
+        assertFalse(tracker.region(FULL, FULL, new int[4]));
+    }
+}
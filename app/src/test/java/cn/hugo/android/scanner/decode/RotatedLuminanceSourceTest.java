@@ -0,0 +1,76 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.LuminanceSource;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the view {@link RotatedLuminanceSource} presents against the copy
+ * {@link FrameRotator} makes of the same framing rect.
+ */
+public class RotatedLuminanceSourceTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void getRowAndGetMatrix_matchRotatedCrop() throws Exception {
+        byte[] frame = randomFrame();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            byte[] expected = new FrameRotator().rotateAndCrop(frame, WIDTH, HEIGHT, rotation, 5, 7, 20, 10);
+            RotatedLuminanceSource source = new RotatedLuminanceSource(frame, WIDTH, HEIGHT, rotation, 5, 7, 20, 10, null);
+            byte[] row = new byte[20];
+            for (int y = 0; y < 10; y++) {
+                byte[] expectedRow = new byte[20];
+                System.arraycopy(expected, y * 20, expectedRow, 0, 20);
+                assertArrayEquals("rotation " + rotation + " row " + y, expectedRow, source.getRow(y, row));
+            }
+            assertArrayEquals("rotation " + rotation, expected, source.getMatrix());
+            // 同一個視圖只生成一次矩陣
+            assertSame(source.getMatrix(), source.getMatrix());
+        }
+    }
+
+    @Test
+    public void rotateCounterClockwise_matchesRotatedMatrix() throws Exception {
+        byte[] frame = randomFrame();
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            LuminanceSource source = new RotatedLuminanceSource(frame, WIDTH, HEIGHT, rotation, 5, 7, 20, 10, null);
+            byte[] matrix = source.getMatrix();
+            LuminanceSource rotated = source.rotateCounterClockwise();
+            assertEquals(10, rotated.getWidth());
+            assertEquals(20, rotated.getHeight());
+            byte[] expected = new byte[20 * 10];
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 10; x++) {
+                    expected[y * 10 + x] = matrix[x * 20 + 19 - y];
+                }
+            }
+            assertArrayEquals("rotation " + rotation, expected, rotated.getMatrix());
+        }
+    }
+
+    @Test
+    public void crop_isRelativeToView() throws Exception {
+        byte[] frame = randomFrame();
+        RotatedLuminanceSource source = new RotatedLuminanceSource(frame, WIDTH, HEIGHT, 90, 5, 7, 20, 10, null);
+        byte[] expected = new FrameRotator().rotateAndCrop(frame, WIDTH, HEIGHT, 90, 8, 9, 4, 3);
+        assertArrayEquals(expected, source.crop(3, 2, 4, 3).getMatrix());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsRectOutsideRotatedFrame() throws Exception {
+        new RotatedLuminanceSource(randomFrame(), WIDTH, HEIGHT, 90, 0, 0, WIDTH, 10, null);
+    }
+
+    private static byte[] randomFrame() {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(7).nextBytes(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,86 @@
+package cn.hugo.android.scanner.decode;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the {@link SceneChangeDetector} still, re-exposed and moved scenes.
+ */
+public class SceneChangeDetectorTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 128;
+    private static final int SIZE = SceneChangeDetector.SIGNATURE_SIZE * SceneChangeDetector.SIGNATURE_SIZE;
+
+    @Test
+    public void stillScene_isSkippedUntilRefresh() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(1000L, SceneChangeDetector.DEFAULT_MIN_CHANGE);
+        byte[] scene = scene(0, 0);
+        int[] first = signature(scene);
+        assertTrue(detector.shouldDecode(first, 0L));
+        detector.markDecoded(first, 0L);
+
+        // 亮度整體變化（自動曝光）不算畫面變化
+        assertFalse(detector.shouldDecode(signature(scene(0, 12)), 500L));
+        assertFalse(detector.shouldDecode(signature(scene), 999L));
+        assertTrue(detector.shouldDecode(signature(scene), 1000L));
+    }
+
+    @Test
+    public void movedScene_isDecoded() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(1000L, SceneChangeDetector.DEFAULT_MIN_CHANGE);
+        detector.markDecoded(signature(scene(0, 0)), 0L);
+        assertTrue(detector.shouldDecode(signature(scene(24, 0)), 100L));
+    }
+
+    @Test
+    public void reset_decodesNextFrame() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(1000L, SceneChangeDetector.DEFAULT_MIN_CHANGE);
+        int[] signature = signature(scene(0, 0));
+        detector.markDecoded(signature, 0L);
+        detector.reset();
+        assertTrue(detector.shouldDecode(signature, 100L));
+    }
+
+    @Test
+    public void focusRun_decodesNextFrame() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(1000L, SceneChangeDetector.DEFAULT_MIN_CHANGE);
+        int[] signature = signature(scene(0, 0));
+        detector.onFocusCount(0);
+        detector.markDecoded(signature, 0L);
+        detector.onFocusCount(0);
+        assertFalse(detector.shouldDecode(signature, 100L));
+        // 對焦結束後，同一畫面的下一幀仍要解碼
+        detector.onFocusCount(1);
+        assertTrue(detector.shouldDecode(signature, 200L));
+    }
+
+    private static int[] signature(byte[] frame) {
+        int[] signature = new int[SIZE];
+        SceneChangeDetector.signature(new RotatedLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, 0, WIDTH, HEIGHT, null), signature, null);
+        return signature;
+    }
+
+    /**
+     * Random blobs of 8x8 pixels, shifted right by {@code shift} pixels and
+     * brightened by {@code brightness}.
+     */
+    private static byte[] scene(int shift, int brightness) {
+        Random random = new Random(3);
+        int[] blobs = new int[(WIDTH / 8 + 8) * (HEIGHT / 8)];
+        for (int i = 0; i < blobs.length; i++) {
+            blobs[i] = 40 + random.nextInt(160);
+        }
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int blob = (y / 8) * (WIDTH / 8 + 8) + (x + shift) / 8;
+                frame[y * WIDTH + x] = (byte) (blobs[blob] + brightness);
+            }
+        }
+        return frame;
+    }
+}
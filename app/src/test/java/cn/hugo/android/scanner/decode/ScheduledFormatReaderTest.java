@@ -0,0 +1,87 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which readers {@link ScheduledFormatReader} picks per frame as the
+ * {@link FormatScheduler} statistics change.
+ */
+public class ScheduledFormatReaderTest {
+    private static final Collection<BarcodeFormat> FORMATS =
+            EnumSet.of(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX);
+
+    @Test
+    public void beginFrame_triesEveryFormatWhileWarm() throws Exception {
+        ScheduledFormatReader reader = new ScheduledFormatReader(hints(), new FormatScheduler(FORMATS, null, 5));
+        for (int frame = 0; frame < 5; frame++) {
+            assertTrue(reader.beginFrame());
+            assertEquals(FORMATS, reader.getAttemptedFormats());
+        }
+    }
+
+    @Test
+    public void beginFrame_throttlesColdFormats() throws Exception {
+        FormatScheduler scheduler = new FormatScheduler(FORMATS, null, 5);
+        ScheduledFormatReader reader = new ScheduledFormatReader(hints(), scheduler);
+        // 倉庫場景：只掃到CODE_128
+        for (int i = 0; i < 300; i++) {
+            scheduler.record(i % 10 == 0 ? BarcodeFormat.CODE_128 : null);
+        }
+        int matrixFrames = 0;
+        for (int frame = 0; frame < 20; frame++) {
+            if (reader.beginFrame()) {
+                matrixFrames++;
+                assertEquals(FORMATS, reader.getAttemptedFormats());
+            } else {
+                assertEquals(EnumSet.of(BarcodeFormat.CODE_128), reader.getAttemptedFormats());
+            }
+        }
+        assertEquals(4, matrixFrames);
+    }
+
+    @Test
+    public void beginFrame_keepsPinnedFormats() throws Exception {
+        FormatScheduler scheduler = new FormatScheduler(FORMATS, EnumSet.of(BarcodeFormat.QR_CODE), 5);
+        ScheduledFormatReader reader = new ScheduledFormatReader(hints(), scheduler);
+        for (int i = 0; i < 300; i++) {
+            scheduler.record(BarcodeFormat.CODE_128);
+        }
+        reader.beginFrame();
+        reader.beginFrame();
+        assertTrue(reader.getAttemptedFormats().contains(BarcodeFormat.QR_CODE));
+        assertFalse(reader.getAttemptedFormats().contains(BarcodeFormat.DATA_MATRIX));
+    }
+
+    @Test
+    public void beginFrame_throttlesOneDGroupLikeSingleFormats() throws Exception {
+        // 所有格式都啟用：一維組有十多種格式，各自冷門時整組也要算冷門
+        FormatScheduler scheduler = new FormatScheduler(null, null, 5);
+        ScheduledFormatReader reader = new ScheduledFormatReader(null, scheduler);
+        for (int i = 0; i < 150; i++) {
+            scheduler.record(BarcodeFormat.QR_CODE);
+        }
+        reader.beginFrame();
+        reader.beginFrame();
+        assertTrue(reader.getAttemptedFormats().contains(BarcodeFormat.QR_CODE));
+        assertFalse(reader.getAttemptedFormats().contains(BarcodeFormat.CODE_128));
+        assertFalse(reader.getAttemptedFormats().contains(BarcodeFormat.DATA_MATRIX));
+    }
+
+    private static Map<DecodeHintType, Object> hints() {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, FORMATS);
+        return hints;
+    }
+}
@@ -0,0 +1,69 @@
+package cn.hugo.android.scanner.decode;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link YuvPlaneLuminanceSource} over a padded, interleaved plane
+ * against {@link RotatedLuminanceSource} over the same pixels packed.
+ */
+public class YuvPlaneLuminanceSourceTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void stridedPlane_matchesPackedFrame() throws Exception {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        new Random(7).nextBytes(frame);
+        for (int pixelStride = 1; pixelStride <= 2; pixelStride++) {
+            // 每行末尾補齊到16位元組的倍數，像素間距為2時模擬交錯的平面
+            int rowStride = (WIDTH * pixelStride + 15) / 16 * 16 + 16;
+            ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    plane.put(y * rowStride + x * pixelStride, frame[y * WIDTH + x]);
+                }
+            }
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                RotatedLuminanceSource expected = new RotatedLuminanceSource(frame, WIDTH, HEIGHT, rotation, 5, 7, 20, 10, null);
+                String label = "stride " + pixelStride + " rotation " + rotation;
+                YuvPlaneLuminanceSource source = new YuvPlaneLuminanceSource(plane, rowStride, pixelStride, WIDTH, HEIGHT,
+                        rotation, 5, 7, 20, 10, null);
+                byte[] row = new byte[20];
+                for (int y = 0; y < 10; y++) {
+                    assertArrayEquals(label + " row " + y, expected.getRow(y, null), source.getRow(y, row));
+                }
+                assertArrayEquals(label, expected.getMatrix(), source.getMatrix());
+                // 矩陣生成之後getRow從矩陣讀取
+                assertArrayEquals(label, expected.getRow(4, null), source.getRow(4, null));
+                assertArrayEquals(label, expected.rotateCounterClockwise().getMatrix(), source.rotateCounterClockwise().getMatrix());
+                assertArrayEquals(label, expected.crop(3, 2, 8, 6).getMatrix(), source.crop(3, 2, 8, 6).getMatrix());
+            }
+        }
+    }
+
+    @Test
+    public void matrixRotator_matchesByteArrayPath() throws Exception {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        new Random(11).nextBytes(frame);
+        int rowStride = WIDTH + 8;
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            plane.position(y * rowStride);
+            plane.put(frame, y * WIDTH, WIDTH);
+        }
+        plane.position(0);
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            byte[] expected = new FrameRotator().rotateAndCrop(frame, WIDTH, HEIGHT, rotation, 3, 9, 30, 12);
+            byte[] actual = new FrameRotator().rotateAndCrop(plane, rowStride, 1, WIDTH, HEIGHT, rotation, 3, 9, 30, 12);
+            assertArrayEquals("rotation " + rotation, expected, actual);
+        }
+        // 平面本身的position不被移動
+        assertEquals(0, plane.position());
+    }
+}
@@ -0,0 +1,42 @@
+package android.graphics;
+
+/**
+ * JVM stand-in for the part of android.graphics.Bitmap which the decode
+ * classes use, backed by an ARGB int[]. Only compiled into the benchmark
+ * module.
+ */
+public final class Bitmap {
+    private final int[] mPixels;
+    private final int mWidth;
+    private final int mHeight;
+
+    public Bitmap(int[] argb, int width, int height) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Not enough pixels for " + width + 'x' + height);
+        }
+        this.mPixels = argb;
+        this.mWidth = width;
+        this.mHeight = height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getPixel(int x, int y) {
+        return mPixels[y * mWidth + x];
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > mWidth || y + height > mHeight) {
+            throw new IllegalArgumentException("Region outside the bitmap");
+        }
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(mPixels, (y + row) * mWidth + x, pixels, offset + row * stride, width);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MultiFormatReader#decodeWithState} on the framing rect of a preview
+ * frame, with the formats the scanner enables by default. "NONE" is a frame
+ * without any barcode, which is what most preview frames look like.
+ * {@link #decode()} runs on a pre-rotated copy of the framing rect,
+ * {@link #decodeView()} on a {@link RotatedLuminanceSource} over the frame,
+ * as DecodeHandler does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"QR_CODE", "CODE_128", "NONE"})
+    public String code;
+
+    private final MultiFormatReader mReader = new MultiFormatReader();
+    private final FrameRotator mFrameRotator = new FrameRotator();
+    private PlanarYUVLuminanceSource mSource;
+    private byte[] mFrame;
+    private int[] mSize;
+    private int[] mRect;
+
+    @Setup
+    public void setUp() {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        // Same set as DecodeFormatManager.ONE_D_FORMATS + QR_CODE + DATA_MATRIX
+        EnumSet<BarcodeFormat> formats = EnumSet.of(BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128,
+                BarcodeFormat.ITF, BarcodeFormat.CODABAR, BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13,
+                BarcodeFormat.EAN_8, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED, BarcodeFormat.QR_CODE,
+                BarcodeFormat.DATA_MATRIX);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        mReader.setHints(hints);
+
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        BarcodeFormat format = "NONE".equals(code) ? null : BarcodeFormat.valueOf(code);
+        byte[] frame = SyntheticFrames.nv21(size[0], size[1],
+                format == null ? null : SyntheticFrames.encode(format, "BENCH-0123456789"), 3L);
+        int[] rect = SyntheticFrames.framingRect(size[0], size[1]);
+        byte[] cropped = new FrameRotator().rotateAndCrop(frame, size[0], size[1], SyntheticFrames.ROTATION, rect[0], rect[1], rect[2], rect[2]);
+        mSource = new PlanarYUVLuminanceSource(cropped, rect[2], rect[2], 0, 0, rect[2], rect[2], false);
+        mFrame = frame;
+        mSize = size;
+        mRect = rect;
+
+        check(format, decode());
+        check(format, decodeView());
+    }
+
+    @Benchmark
+    public Result decode() {
+        return decode(mSource);
+    }
+
+    @Benchmark
+    public Result decodeView() {
+        return decode(new RotatedLuminanceSource(mFrame, mSize[0], mSize[1], SyntheticFrames.ROTATION,
+                mRect[0], mRect[1], mRect[2], mRect[2], mFrameRotator));
+    }
+
+    private Result decode(LuminanceSource source) {
+        try {
+            return mReader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
+        } catch (ReaderException re) {
+            return null;
+        } finally {
+            mReader.reset();
+        }
+    }
+
+    private void check(BarcodeFormat format, Result result) {
+        if (format != null && (result == null || result.getBarcodeFormat() != format)) {
+            throw new IllegalStateException("Synthetic " + format + " frame at " + resolution + " does not decode");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cn.hugo.android.scanner.decode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of {@link BitmapLuminanceSource}, the first step of decoding a
+ * gallery image through BitmapDecoder, against the whole-image int[] copy it
+ * used to make.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuminanceSourceBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private Bitmap mBitmap;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        byte[] frame = SyntheticFrames.nv21(size[0], size[1], null, 2L);
+        mBitmap = new Bitmap(SyntheticFrames.argb(frame, size[0], size[1]), size[0], size[1]);
+    }
+
+    @Benchmark
+    public BitmapLuminanceSource construct() {
+        return new BitmapLuminanceSource(mBitmap);
+    }
+
+    /**
+     * Baseline: what BitmapLuminanceSource did before reading row strips.
+     */
+    @Benchmark
+    public byte[] blueChannelCopy() {
+        int width = mBitmap.getWidth();
+        int height = mBitmap.getHeight();
+        int[] data = new int[width * height];
+        byte[] pixels = new byte[width * height];
+        mBitmap.getPixels(data, 0, width, 0, 0, width, height);
+        for (int i = 0; i < data.length; i++) {
+            pixels[i] = (byte) data[i];
+        }
+        return pixels;
+    }
+}
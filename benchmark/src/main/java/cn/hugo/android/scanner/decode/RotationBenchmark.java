@@ -0,0 +1,66 @@
+package cn.hugo.android.scanner.decode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rotation stage of DecodeHandler: the full-frame rotation it used to do
+ * against {@link FrameRotator}, which only rotates the framing rect.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotationBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private byte[] mFrame;
+    private int mWidth;
+    private int mHeight;
+    private int[] mRect;
+    private final FrameRotator mFrameRotator = new FrameRotator();
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mWidth = size[0];
+        mHeight = size[1];
+        mFrame = SyntheticFrames.nv21(mWidth, mHeight, null, 1L);
+        mRect = SyntheticFrames.framingRect(mWidth, mHeight);
+    }
+
+    /**
+     * Baseline: what DecodeHandler.decode did before the rotation stage.
+     */
+    @Benchmark
+    public byte[] fullFrameRotation() {
+        byte[] data = mFrame;
+        int width = mWidth;
+        int height = mHeight;
+        byte[] rotatedData = new byte[data.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                rotatedData[x * height + height - y - 1] = data[x + y * width];
+        }
+        return rotatedData;
+    }
+
+    @Benchmark
+    public byte[] rotateAndCrop() {
+        return mFrameRotator.rotateAndCrop(mFrame, mWidth, mHeight, SyntheticFrames.ROTATION, mRect[0], mRect[1], mRect[2], mRect[2]);
+    }
+}
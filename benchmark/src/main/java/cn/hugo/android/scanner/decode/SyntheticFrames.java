@@ -0,0 +1,130 @@
+package cn.hugo.android.scanner.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.Random;
+
+/**
+ * Builds the synthetic NV21 preview frames the benchmarks run on. A frame is
+ * laid out like the sensor delivers it (landscape), with an optional barcode
+ * which reads upright once the frame is rotated by 90 degrees, centered in
+ * the framing rect CameraManager would compute for a portrait screen of the
+ * same resolution.
+ */
+final class SyntheticFrames {
+    static final int ROTATION = 90;
+    private static final int MIN_FRAME_WIDTH = 240;
+    private static final int MAX_FRAME_WIDTH = 1200;
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * @param resolution Such as "1280x720", landscape.
+     */
+    static int[] parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    /**
+     * The square framing rect in rotated (portrait) coordinates, as
+     * {left, top, size}; same arithmetic as CameraManager.getFramingRect().
+     */
+    static int[] framingRect(int width, int height) {
+        int rotatedWidth = height;
+        int rotatedHeight = width;
+        int size = Math.max(MIN_FRAME_WIDTH, Math.min(MAX_FRAME_WIDTH, 5 * rotatedWidth / 8));
+        return new int[]{(rotatedWidth - size) / 2, (rotatedHeight - size) / 2, size};
+    }
+
+    static BitMatrix encode(BarcodeFormat format, String contents) {
+        try {
+            switch (format) {
+                case QR_CODE:
+                    return new QRCodeWriter().encode(contents, format, 0, 0);
+                case CODE_128:
+                    return new Code128Writer().encode(contents, format, 0, 1);
+                default:
+                    throw new IllegalArgumentException("No writer for " + format);
+            }
+        } catch (WriterException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @param code The barcode to paint, or null for an empty scene.
+     */
+    static byte[] nv21(int width, int height, BitMatrix code, long seed) {
+        Random random = new Random(seed);
+        int rotatedWidth = height;
+        int rotatedHeight = width;
+        byte[] portrait = new byte[rotatedWidth * rotatedHeight];
+        // 背景：平滑漸變加雜訊
+        for (int y = 0; y < rotatedHeight; y++) {
+            for (int x = 0; x < rotatedWidth; x++) {
+                int value = 90 + 60 * x / rotatedWidth + 40 * y / rotatedHeight + random.nextInt(24);
+                portrait[y * rotatedWidth + x] = (byte) value;
+            }
+        }
+        if (code != null) {
+            int[] rect = framingRect(width, height);
+            paint(portrait, rotatedWidth, rect, code, random);
+        }
+
+        byte[] frame = new byte[width * height * 3 / 2];
+        // rotated(rx, ry) = source(ry, height - 1 - rx)
+        for (int sy = 0; sy < height; sy++) {
+            for (int sx = 0; sx < width; sx++) {
+                frame[sy * width + sx] = portrait[sx * rotatedWidth + height - 1 - sy];
+            }
+        }
+        for (int i = width * height; i < frame.length; i++) {
+            frame[i] = (byte) 128;
+        }
+        return frame;
+    }
+
+    /**
+     * Expands a luminance plane to opaque grey ARGB pixels.
+     */
+    static int[] argb(byte[] luminance, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int y = luminance[i] & 0xff;
+            pixels[i] = 0xff000000 | (y << 16) | (y << 8) | y;
+        }
+        return pixels;
+    }
+
+    /**
+     * Paints the code, with a white quiet zone, into the middle 80% of the
+     * framing rect.
+     */
+    private static void paint(byte[] image, int imageWidth, int[] rect, BitMatrix code, Random random) {
+        int quiet = 4;
+        int modulesWide = code.getWidth() + 2 * quiet;
+        int target = rect[2] * 4 / 5;
+        int scale = Math.max(1, target / modulesWide);
+        int codeWidth = modulesWide * scale;
+        int codeHeight = code.getHeight() == 1 ? codeWidth / 3 : (code.getHeight() + 2 * quiet) * scale;
+        int left = rect[0] + (rect[2] - codeWidth) / 2;
+        int top = rect[1] + (rect[2] - codeHeight) / 2;
+        for (int y = 0; y < codeHeight; y++) {
+            int moduleY = code.getHeight() == 1 ? 0 : y / scale - quiet;
+            for (int x = 0; x < codeWidth; x++) {
+                int moduleX = x / scale - quiet;
+                boolean black = moduleX >= 0 && moduleX < code.getWidth()
+                        && moduleY >= 0 && moduleY < code.getHeight()
+                        && code.get(moduleX, moduleY);
+                int value = (black ? 30 : 220) + random.nextInt(16) - 8;
+                image[(top + y) * imageWidth + left + x] = (byte) value;
+            }
+        }
+    }
+}